@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tail, center, nearest and snap decisions on randomized viewports and items. Head alignment
+ * always scrolls to offset 0 and has no math to measure.
+ *
+ * @author Shigehiro Soejima
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlignmentMathBenchmark {
+    private static final int SAMPLES = 1024;
+
+    private final int[] mViewportStarts = new int[SAMPLES];
+    private final int[] mViewportSizes = new int[SAMPLES];
+    private final int[] mItemStarts = new int[SAMPLES];
+    private final int[] mItemSizes = new int[SAMPLES];
+    private final int[] mPositions = new int[SAMPLES];
+    private final int[] mFirstPositions = new int[SAMPLES];
+    private final int[] mStrategies = new int[SAMPLES];
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            mViewportStarts[i] = random.nextInt(64);
+            mViewportSizes[i] = 400 + random.nextInt(1600);
+            mItemStarts[i] = random.nextInt(4000) - 2000;
+            mItemSizes[i] = 1 + random.nextInt(800);
+            mPositions[i] = random.nextInt(100000);
+            mFirstPositions[i] = random.nextInt(100000);
+            mStrategies[i] = random.nextInt(5);
+        }
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+
+        return mIndex;
+    }
+
+    @Benchmark
+    public int tail() {
+        int i = next();
+
+        return AlignmentMath.getBottomOffset(mViewportStarts[i], mViewportSizes[i], mItemSizes[i]);
+    }
+
+    @Benchmark
+    public int center() {
+        int i = next();
+
+        return AlignmentMath.getCenterOffset(mViewportStarts[i], mViewportSizes[i], mItemSizes[i]);
+    }
+
+    @Benchmark
+    public int nearest() {
+        int i = next();
+
+        return AlignmentMath.getNearestDelta(mViewportStarts[i], mViewportSizes[i],
+                mItemStarts[i], mItemSizes[i]);
+    }
+
+    @Benchmark
+    public int snap() {
+        int i = next();
+        int first = mFirstPositions[i];
+
+        return AlignmentMath.getSnapAlignment(mPositions[i], first, first + 10, mStrategies[i]);
+    }
+}
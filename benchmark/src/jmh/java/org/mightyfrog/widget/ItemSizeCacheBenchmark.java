@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Item size cache lookups and updates.
+ *
+ * @author Shigehiro Soejima
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ItemSizeCacheBenchmark {
+    private static final int SAMPLES = 4096;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int itemCount;
+
+    private final ItemSizeCache mCache = new ItemSizeCache();
+    private final int[] mPositions = new int[SAMPLES];
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mCache.clear();
+        for (int i = 0; i < itemCount; i++) {
+            mCache.put(i, 100 + random.nextInt(200));
+        }
+        for (int i = 0; i < SAMPLES; i++) {
+            mPositions[i] = random.nextInt(itemCount);
+        }
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+
+        return mPositions[mIndex];
+    }
+
+    @Benchmark
+    public int get() {
+        return mCache.get(next());
+    }
+
+    @Benchmark
+    public void put() {
+        mCache.put(next(), 120);
+    }
+
+    /**
+     * An insertion followed by the matching removal, which keeps the item count stable.
+     */
+    @Benchmark
+    public void insertRemove() {
+        int position = next();
+        mCache.insert(position, 1);
+        mCache.remove(position, 1);
+    }
+}
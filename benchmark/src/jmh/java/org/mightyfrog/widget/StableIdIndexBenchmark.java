@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stable ID to position lookups, and the updates adapter notifications make.
+ *
+ * @author Shigehiro Soejima
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StableIdIndexBenchmark {
+    private static final int SAMPLES = 4096;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int itemCount;
+
+    private final StableIdIndex mIndex = new StableIdIndex();
+    private final long[] mIds = new long[SAMPLES];
+    private final int[] mPositions = new int[SAMPLES];
+
+    private int mCursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mIndex.reset(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            mIndex.setId(i, idFor(i));
+        }
+        for (int i = 0; i < SAMPLES; i++) {
+            mPositions[i] = random.nextInt(itemCount);
+            mIds[i] = idFor(mPositions[i]);
+        }
+    }
+
+    /**
+     * Spreads IDs the way database keys or hashes usually are.
+     */
+    private static long idFor(int position) {
+        return position * 0x9E3779B97F4A7C15L;
+    }
+
+    private int next() {
+        mCursor = (mCursor + 1) & (SAMPLES - 1);
+
+        return mCursor;
+    }
+
+    @Benchmark
+    public int getPosition() {
+        return mIndex.getPosition(mIds[next()]);
+    }
+
+    @Benchmark
+    public int getPositionMissing() {
+        return mIndex.getPosition(~mIds[next()]);
+    }
+
+    /**
+     * Rebinding an item to the same ID, as done for notifyItemChanged.
+     */
+    @Benchmark
+    public void setId() {
+        int i = next();
+        mIndex.setId(mPositions[i], mIds[i]);
+    }
+
+    /**
+     * An insertion followed by the matching removal, which keeps the item count stable.
+     */
+    @Benchmark
+    public void insertRemove() {
+        int position = mPositions[next()];
+        mIndex.insert(position, 1);
+        mIndex.remove(position, 1);
+    }
+
+    /**
+     * A drag-and-drop step, moving an item next to its neighbor and back.
+     */
+    @Benchmark
+    public void moveShort() {
+        int from = mPositions[next()];
+        int to = from + 1 < itemCount ? from + 1 : from - 1;
+        mIndex.move(from, to);
+        mIndex.move(to, from);
+    }
+
+    /**
+     * Moving an item to a random position and back, as a re-sort does.
+     */
+    @Benchmark
+    public void moveLong() {
+        int from = mPositions[next()];
+        int to = mPositions[next()];
+        mIndex.move(from, to);
+        mIndex.move(to, from);
+    }
+}
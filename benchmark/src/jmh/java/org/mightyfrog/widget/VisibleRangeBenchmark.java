@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reduction of per-span visible positions, as done for StaggeredGridLayoutManager.
+ *
+ * @author Shigehiro Soejima
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VisibleRangeBenchmark {
+    private static final int SAMPLES = 256;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int spanCount;
+
+    private int[][] mSpanPositions;
+
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mSpanPositions = new int[SAMPLES][spanCount];
+        for (int[] positions : mSpanPositions) {
+            for (int i = 0; i < spanCount; i++) {
+                // a few spans are empty near the end of the list
+                positions[i] = random.nextInt(16) == 0
+                        ? AlignmentMath.NO_POSITION : random.nextInt(100000);
+            }
+        }
+    }
+
+    private int[] next() {
+        mIndex = (mIndex + 1) & (SAMPLES - 1);
+
+        return mSpanPositions[mIndex];
+    }
+
+    @Benchmark
+    public int first() {
+        return AlignmentMath.minPosition(next());
+    }
+
+    @Benchmark
+    public int last() {
+        return AlignmentMath.maxPosition(next());
+    }
+}
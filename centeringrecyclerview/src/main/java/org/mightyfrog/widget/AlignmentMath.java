@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+/**
+ * The alignment decisions of CenteringRecyclerView on plain ints, free of Android types so they
+ * can be benchmarked and tested on a plain JVM.
+ * <p>
+ * Offsets are measured from the padded start edge, in the same space
+ * scrollToPositionWithOffset uses; the viewport is the visible part of that space.
+ *
+ * @author Shigehiro Soejima
+ */
+final class AlignmentMath {
+    static final int NO_POSITION = -1;
+
+    static final int ALIGN_HEAD = 0;
+    static final int ALIGN_TAIL = 1;
+    static final int ALIGN_CENTER = 2;
+    static final int ALIGN_NEAREST = 3;
+    static final int NO_ALIGNMENT = -1;
+
+    static final int SNAPPING_STRATEGY_HEAD = 0;
+    static final int SNAPPING_STRATEGY_TAIL = 1;
+    static final int SNAPPING_STRATEGY_CENTER = 2;
+    static final int SNAPPING_STRATEGY_NONE = 3;
+    static final int SNAPPING_STRATEGY_NEAREST = 4;
+
+    private AlignmentMath() {
+    }
+
+    /**
+     * Returns the offset that centers an item.
+     *
+     * @param viewportStart The viewport start.
+     * @param viewportSize  The viewport size.
+     * @param size          The item size.
+     * @return the offset.
+     */
+    static int getCenterOffset(int viewportStart, int viewportSize, int size) {
+        return viewportStart + (viewportSize - size) / 2;
+    }
+
+    /**
+     * Returns the offset that aligns an item to the viewport end.
+     *
+     * @param viewportStart The viewport start.
+     * @param viewportSize  The viewport size.
+     * @param size          The item size.
+     * @return the offset.
+     */
+    static int getBottomOffset(int viewportStart, int viewportSize, int size) {
+        return viewportStart + viewportSize - size;
+    }
+
+    /**
+     * Returns the shortest distance that makes an item completely visible. An item larger than
+     * the viewport is moved to its start.
+     *
+     * @param viewportStart The viewport start.
+     * @param viewportSize  The viewport size.
+     * @param itemStart     The current item offset.
+     * @param itemSize      The item size.
+     * @return the distance, positive towards the end.
+     */
+    static int getNearestDelta(int viewportStart, int viewportSize, int itemStart, int itemSize) {
+        if (itemStart < viewportStart || itemSize > viewportSize) {
+            return viewportStart - itemStart;
+        }
+
+        int overflow = itemStart + itemSize - (viewportStart + viewportSize);
+
+        return overflow > 0 ? -overflow : 0;
+    }
+
+    /**
+     * Returns twice the distance between the center of an item and a doubled viewport center,
+     * which keeps odd sizes exact.
+     *
+     * @param itemStart     The item offset.
+     * @param itemSize      The item size.
+     * @param doubledCenter Twice the viewport center.
+     * @return the doubled distance.
+     */
+    static int getCenterDistance(int itemStart, int itemSize, int doubledCenter) {
+        return Math.abs(2 * itemStart + itemSize - doubledCenter);
+    }
+
+    /**
+     * Returns the signed distance between the center of an item and the viewport center, as a
+     * fraction of half the viewport size: 0 at the center, -1 and 1 at the start and end edges.
+     *
+     * @param itemStart     The item offset.
+     * @param itemSize      The item size.
+     * @param doubledCenter Twice the viewport center.
+     * @param viewportSize  The viewport size.
+     * @return the normalized distance, beyond -1 or 1 for items past the edges.
+     */
+    static float getNormalizedCenterDistance(int itemStart, int itemSize, int doubledCenter,
+                                             int viewportSize) {
+        if (viewportSize <= 0) {
+            return 0;
+        }
+
+        return (float) (2 * itemStart + itemSize - doubledCenter) / viewportSize;
+    }
+
+    /**
+     * Returns the alignment snap() applies to a position, by its distance from the visible range.
+     *
+     * @param position     The adapter position.
+     * @param firstVisible The first visible position.
+     * @param lastVisible  The last visible position.
+     * @param strategy     The snapping strategy for a tie.
+     * @return ALIGN_HEAD, ALIGN_TAIL, ALIGN_CENTER, ALIGN_NEAREST or NO_ALIGNMENT.
+     */
+    static int getSnapAlignment(int position, int firstVisible, int lastVisible, int strategy) {
+        if (strategy == SNAPPING_STRATEGY_NEAREST) {
+            // decided by pixel distance once the target is laid out
+            return ALIGN_NEAREST;
+        }
+
+        int diffFirst = firstVisible - position;
+        int diffLast = position - lastVisible;
+        if (diffFirst > diffLast) {
+            return ALIGN_HEAD;
+        } else if (diffFirst < diffLast) {
+            return ALIGN_TAIL;
+        }
+
+        switch (strategy) {
+            case SNAPPING_STRATEGY_HEAD:
+                return ALIGN_HEAD;
+            case SNAPPING_STRATEGY_TAIL:
+                return ALIGN_TAIL;
+            case SNAPPING_STRATEGY_CENTER:
+                return ALIGN_CENTER;
+            default:
+                return NO_ALIGNMENT;
+        }
+    }
+
+    /**
+     * Maps a virtual position of a looping list to the real item it shows.
+     *
+     * @param position  The virtual position.
+     * @param loopCount The number of real items.
+     * @return the real position or NO_POSITION.
+     */
+    static int getRealPosition(int position, int loopCount) {
+        if (position < 0) {
+            return NO_POSITION;
+        }
+
+        return position % loopCount;
+    }
+
+    /**
+     * Returns the virtual position of a looping list that shows the given item and is the
+     * closest to the anchor, so reaching it never takes more than half a loop.
+     *
+     * @param position  The real (or any virtual) position.
+     * @param anchor    The virtual position to stay close to.
+     * @param loopCount The number of real items.
+     * @param itemCount The number of virtual items.
+     * @return the virtual position or NO_POSITION.
+     */
+    static int getNearestCopy(int position, int anchor, int loopCount, int itemCount) {
+        if (position < 0 || itemCount <= 0) {
+            return NO_POSITION;
+        }
+
+        int diff = (position % loopCount) - (anchor % loopCount);
+        if (diff > loopCount / 2) {
+            diff -= loopCount;
+        } else if (diff < -(loopCount - 1) / 2) {
+            diff += loopCount;
+        }
+
+        int copy = anchor + diff;
+        if (copy < 0) {
+            copy += loopCount;
+        } else if (copy >= itemCount) {
+            copy -= loopCount;
+        }
+
+        return copy >= 0 && copy < itemCount ? copy : NO_POSITION;
+    }
+
+    /**
+     * Returns the smallest position ignoring empty spans.
+     *
+     * @param positions The per-span positions.
+     * @return the position or NO_POSITION if every span is empty.
+     */
+    static int minPosition(int[] positions) {
+        int min = NO_POSITION;
+        for (int position : positions) {
+            if (position != NO_POSITION && (min == NO_POSITION || position < min)) {
+                min = position;
+            }
+        }
+
+        return min;
+    }
+
+    /**
+     * Returns the largest position ignoring empty spans.
+     *
+     * @param positions The per-span positions.
+     * @return the position or NO_POSITION if every span is empty.
+     */
+    static int maxPosition(int[] positions) {
+        int max = NO_POSITION;
+        for (int position : positions) {
+            if (position > max) {
+                max = position;
+            }
+        }
+
+        return max;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.mightyfrog.widget;
+
+/**
+ * What a single alignment request of {@link CenteringRecyclerView} cost, reported through
+ * {@link CenteringRecyclerView.OnAlignmentMetricsListener} once the request has settled.
+ * <p>
+ * One instance is reused for every request, so read the values within the listener call and do
+ * not keep the instance.
+ *
+ * @author Shigehiro Soejima
+ */
+public final class AlignmentMetrics {
+    int mPosition;
+    int mAlignment;
+    boolean mSmooth;
+    int mItemDistance;
+    int mLayoutPassCount;
+    int mAttachedChildCount;
+    int mMeasureBindCount;
+    long mStartNanos;
+    long mDurationNanos;
+    int mError;
+    boolean mFallbackOffsetUsed;
+    boolean mCorrected;
+
+    AlignmentMetrics() {
+    }
+
+    /**
+     * Returns the adapter position of the request.
+     *
+     * @return the adapter position.
+     */
+    public int getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Returns the alignment that was applied. A snap request reports the end it snapped to.
+     *
+     * @return (ALIGN_HEAD | ALIGN_TAIL | ALIGN_CENTER | ALIGN_NEAREST) or -1 if none was applied.
+     */
+    public int getAlignment() {
+        return mAlignment;
+    }
+
+    /**
+     * Tests if the request was a smooth scroll.
+     *
+     * @return true if the request was a smooth scroll.
+     */
+    public boolean isSmooth() {
+        return mSmooth;
+    }
+
+    /**
+     * Returns how many items the target was outside the visible range when it was requested.
+     *
+     * @return the number of items, 0 if it was visible, or -1 if nothing was laid out.
+     */
+    public int getItemDistance() {
+        return mItemDistance;
+    }
+
+    /**
+     * Returns the number of layout passes between the request and the moment it settled.
+     *
+     * @return the number of layout passes.
+     */
+    public int getLayoutPassCount() {
+        return mLayoutPassCount;
+    }
+
+    /**
+     * Returns the number of children the layout manager attached for the request. Newly bound
+     * items are attached, but so are children re-attached from the scrap or the view cache
+     * without a bind, so this is not a bind count.
+     *
+     * @return the number of attached children.
+     */
+    public int getAttachedChildCount() {
+        return mAttachedChildCount;
+    }
+
+    /**
+     * Returns the number of items bound by measureAhead to size the target before it was laid
+     * out.
+     *
+     * @return the number of binds.
+     */
+    public int getMeasureBindCount() {
+        return mMeasureBindCount;
+    }
+
+    /**
+     * Returns the time from the request to the moment it settled.
+     *
+     * @return the duration in nanoseconds.
+     */
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    /**
+     * Returns the distance in pixels the target still was from the requested alignment.
+     *
+     * @return the error, positive towards the end, or 0 if it cannot be measured.
+     */
+    public int getError() {
+        return mError;
+    }
+
+    /**
+     * Tests if the target was first scrolled to the last known center or bottom offset because
+     * nothing was laid out to size it from.
+     *
+     * @return true if a fallback offset was used.
+     */
+    public boolean isFallbackOffsetUsed() {
+        return mFallbackOffsetUsed;
+    }
+
+    /**
+     * Tests if the target had to be re-aligned after it was laid out, because its size was not
+     * known up front.
+     *
+     * @return true if a correction ran.
+     */
+    public boolean isCorrected() {
+        return mCorrected;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+/**
+ * Looks up the visible range and scrolls to a position with an offset for a particular
+ * LayoutManager. {@link CenteringRecyclerView} resolves a strategy once when the layout manager is
+ * set, so custom layout managers can be centered by implementing this interface on the layout
+ * manager itself or by calling {@link CenteringRecyclerView#setAlignmentStrategy(AlignmentStrategy)}.
+ *
+ * @author Shigehiro Soejima
+ * @see LinearAlignmentStrategy
+ * @see GridAlignmentStrategy
+ * @see StaggeredGridAlignmentStrategy
+ */
+public interface AlignmentStrategy {
+
+    /**
+     * Returns the layout orientation.
+     *
+     * @return RecyclerView.HORIZONTAL or RecyclerView.VERTICAL.
+     */
+    int getOrientation();
+
+    /**
+     * Returns the first visible adapter position.
+     *
+     * @return the position or RecyclerView.NO_POSITION if nothing is visible.
+     */
+    int findFirstVisibleItemPosition();
+
+    /**
+     * Returns the last visible adapter position.
+     *
+     * @return the position or RecyclerView.NO_POSITION if nothing is visible.
+     */
+    int findLastVisibleItemPosition();
+
+    /**
+     * Returns the first completely visible adapter position.
+     *
+     * @return the position or RecyclerView.NO_POSITION if nothing is completely visible.
+     */
+    int findFirstCompletelyVisibleItemPosition();
+
+    /**
+     * Returns the last completely visible adapter position.
+     *
+     * @return the position or RecyclerView.NO_POSITION if nothing is completely visible.
+     */
+    int findLastCompletelyVisibleItemPosition();
+
+    /**
+     * Scrolls to the given position and lays it out at the given offset from the padded start
+     * edge on the next layout pass.
+     *
+     * @param position The adapter position.
+     * @param offset   The distance in pixels between the start edge of the item and the start
+     *                 edge of the padded content area.
+     */
+    void scrollToPositionWithOffset(int position, int offset);
+}
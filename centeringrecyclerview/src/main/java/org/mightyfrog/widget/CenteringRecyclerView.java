@@ -19,11 +19,26 @@ package org.mightyfrog.widget;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Rect;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.util.SparseIntArray;
+import android.view.KeyEvent;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.widget.OverScroller;
 
-import java.util.Arrays;
-
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.core.view.ViewCompat;
+import androidx.customview.view.AbsSavedState;
+import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.OrientationHelper;
 import androidx.recyclerview.widget.RecyclerView;
@@ -33,17 +48,27 @@ import androidx.recyclerview.widget.StaggeredGridLayoutManager;
  * @author Shigehiro Soejima
  */
 public class CenteringRecyclerView extends RecyclerView {
-    public static final int ALIGN_HEAD = 0;
-    public static final int ALIGN_TAIL = 1;
-    public static final int ALIGN_CENTER = 2;
+    public static final int ALIGN_HEAD = AlignmentMath.ALIGN_HEAD;
+    public static final int ALIGN_TAIL = AlignmentMath.ALIGN_TAIL;
+    public static final int ALIGN_CENTER = AlignmentMath.ALIGN_CENTER;
+    public static final int ALIGN_NEAREST = AlignmentMath.ALIGN_NEAREST;
+
+    public static final int SNAPPING_STRATEGY_HEAD = AlignmentMath.SNAPPING_STRATEGY_HEAD;
+    public static final int SNAPPING_STRATEGY_TAIL = AlignmentMath.SNAPPING_STRATEGY_TAIL;
+    public static final int SNAPPING_STRATEGY_CENTER = AlignmentMath.SNAPPING_STRATEGY_CENTER;
+    public static final int SNAPPING_STRATEGY_NONE = AlignmentMath.SNAPPING_STRATEGY_NONE;
+    public static final int SNAPPING_STRATEGY_NEAREST = AlignmentMath.SNAPPING_STRATEGY_NEAREST;
 
-    public static final int SNAPPING_STRATEGY_HEAD = 0;
-    public static final int SNAPPING_STRATEGY_TAIL = 1;
-    public static final int SNAPPING_STRATEGY_CENTER = 2;
-    public static final int SNAPPING_STRATEGY_NONE = 3;
+    /**
+     * The payload of the notifyItemChanged() calls made when the selected position changes.
+     * Adapters can check for it in onBindViewHolder(ViewHolder, int, List) and only update the
+     * selection state of the holder.
+     */
+    public static final Object PAYLOAD_SELECTION = new Object();
 
     private boolean mIgnoreIfVisible;
     private boolean mIgnoreIfCompletelyVisible;
+    private boolean mMeasureAhead;
 
     public CenteringRecyclerView(Context context) {
         this(context, null);
@@ -64,30 +89,60 @@ public class CenteringRecyclerView extends RecyclerView {
         try {
             mIgnoreIfVisible = a.getBoolean(R.styleable.CenteringRecyclerView_ignoreIfVisible, false);
             mIgnoreIfCompletelyVisible = a.getBoolean(R.styleable.CenteringRecyclerView_ignoreIfCompletelyVisible, false);
+            mMeasureAhead = a.getBoolean(R.styleable.CenteringRecyclerView_measureAhead, false);
         } finally {
             a.recycle();
         }
+
+        mKeyNavigationMaxSpeed = (int) (DEFAULT_KEY_NAVIGATION_MAX_SPEED_DP
+                * context.getResources().getDisplayMetrics().density);
     }
 
     /**
      * Sets the currently selected position with the given alignment.
      *
      * @param position  The adapter position.
-     * @param alignment (ALIGN_HEAD | ALIGN_TAIL ALIGN_CENTER)
+     * @param alignment (ALIGN_HEAD | ALIGN_TAIL | ALIGN_CENTER | ALIGN_NEAREST)
      * @see #center(int)
      * @see #head(int)
      * @see #tail(int)
+     * @see #nearest(int)
+     * @see #setSelectionTrackingEnabled(boolean)
      */
     public void setSelection(int position, int alignment) {
+        setSelection(position, alignment, null);
+    }
+
+    /**
+     * Sets the currently selected position with the given alignment, and calls back once the
+     * item has settled.
+     *
+     * @param position  The adapter position.
+     * @param alignment (ALIGN_HEAD | ALIGN_TAIL | ALIGN_CENTER | ALIGN_NEAREST)
+     * @param callback  The callback or null.
+     * @see #setSelection(int, int)
+     */
+    public void setSelection(int position, int alignment, @Nullable AlignmentCallback callback) {
+        if (alignment < ALIGN_HEAD || alignment > ALIGN_NEAREST) {
+            throw new IllegalArgumentException("unknown alignment");
+        }
+
+        position = toVirtualPosition(position);
+
+        setSelectedPosition(position);
+
         switch (alignment) {
             case ALIGN_CENTER:
-                center(position);
+                center(position, callback);
                 break;
             case ALIGN_HEAD:
-                head(position);
+                head(position, callback);
                 break;
             case ALIGN_TAIL:
-                tail(position);
+                tail(position, callback);
+                break;
+            case ALIGN_NEAREST:
+                nearest(position, callback);
                 break;
             default:
                 throw new IllegalArgumentException("unknown alignment");
@@ -100,6 +155,22 @@ public class CenteringRecyclerView extends RecyclerView {
      * @param position The adapter position.
      */
     public void head(int position) {
+        head(position, null);
+    }
+
+    /**
+     * Scrolls a view at the given position to top (left), and calls back once it has settled.
+     *
+     * @param position The adapter position.
+     * @param callback The callback or null.
+     * @see #head(int)
+     */
+    public void head(int position, @Nullable AlignmentCallback callback) {
+        position = toVirtualPosition(position);
+        if (deferRequest(ALIGN_HEAD, position, SNAPPING_STRATEGY_NONE, callback)) {
+            return;
+        }
+
         if (mIgnoreIfCompletelyVisible && isCompletelyVisible(position)) {
             return;
         }
@@ -108,16 +179,8 @@ public class CenteringRecyclerView extends RecyclerView {
             return;
         }
 
-        LayoutManager lm = getLayoutManager();
-        if (lm instanceof LinearLayoutManager) {
-            LinearLayoutManager llm = (LinearLayoutManager) lm;
-            llm.scrollToPositionWithOffset(position, 0);
-        } else if (lm instanceof StaggeredGridLayoutManager) {
-            final StaggeredGridLayoutManager sglm = (StaggeredGridLayoutManager) lm;
-            sglm.scrollToPositionWithOffset(position, 0);
-        } else {
-            throw new UnsupportedOperationException("unsupported layout manager");
-        }
+        requireAlignmentStrategy().scrollToPositionWithOffset(position, 0);
+        setAlignedPosition(position, ALIGN_HEAD);
     }
 
     /**
@@ -125,7 +188,23 @@ public class CenteringRecyclerView extends RecyclerView {
      *
      * @param position The adapter position.
      */
-    public void tail(final int position) {
+    public void tail(int position) {
+        tail(position, null);
+    }
+
+    /**
+     * Scrolls a view at the given position to bottom (right), and calls back once it has settled.
+     *
+     * @param position The adapter position.
+     * @param callback The callback or null.
+     * @see #tail(int)
+     */
+    public void tail(int position, @Nullable AlignmentCallback callback) {
+        position = toVirtualPosition(position);
+        if (deferRequest(ALIGN_TAIL, position, SNAPPING_STRATEGY_NONE, callback)) {
+            return;
+        }
+
         if (mIgnoreIfCompletelyVisible && isCompletelyVisible(position)) {
             return;
         }
@@ -134,35 +213,18 @@ public class CenteringRecyclerView extends RecyclerView {
             return;
         }
 
-        LayoutManager lm = getLayoutManager();
-        if (lm instanceof LinearLayoutManager) {
-            LinearLayoutManager llm = (LinearLayoutManager) lm;
-            int offset = getBottomOffset(llm.getOrientation(), 0);
-            llm.scrollToPositionWithOffset(position, offset);
-        } else if (lm instanceof StaggeredGridLayoutManager) {
-            final StaggeredGridLayoutManager sglm = (StaggeredGridLayoutManager) lm;
-            int offset = getBottomOffset(sglm.getOrientation(), 0);
-            sglm.scrollToPositionWithOffset(position, offset);
-
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    int first = getFirstVisiblePosition();
-                    int last = getLastVisiblePosition();
-                    int childPosition = 0;
-                    for (int i = first; i < last; i++) {
-                        if (i == position) {
-                            int offset = getBottomOffset(sglm.getOrientation(), childPosition);
-                            sglm.scrollToPositionWithOffset(position, offset);
-                            break;
-                        }
-                        childPosition++;
-                    }
-                }
-            });
-        } else {
-            throw new UnsupportedOperationException("unsupported layout manager");
+        AlignmentStrategy strategy = requireAlignmentStrategy();
+        setAlignedPosition(position, ALIGN_TAIL);
+        int orientation = strategy.getOrientation();
+        int size = getAlignedSize(getLayoutManager(), orientation, position);
+        if (size != NO_SIZE) {
+            strategy.scrollToPositionWithOffset(position, getBottomOffsetForSize(orientation, size));
+            return;
         }
+
+        // the size is unknown until the target is laid out, re-align it afterwards
+        strategy.scrollToPositionWithOffset(position, getBottomOffset(orientation, getChildAt(0)));
+        postCorrection(position, ALIGN_TAIL);
     }
 
     /**
@@ -170,7 +232,23 @@ public class CenteringRecyclerView extends RecyclerView {
      *
      * @param position The adapter position.
      */
-    public void center(final int position) {
+    public void center(int position) {
+        center(position, null);
+    }
+
+    /**
+     * Scrolls a view at the given position to center, and calls back once it has settled.
+     *
+     * @param position The adapter position.
+     * @param callback The callback or null.
+     * @see #center(int)
+     */
+    public void center(int position, @Nullable AlignmentCallback callback) {
+        position = toVirtualPosition(position);
+        if (deferRequest(ALIGN_CENTER, position, SNAPPING_STRATEGY_NONE, callback)) {
+            return;
+        }
+
         if (mIgnoreIfCompletelyVisible && isCompletelyVisible(position)) {
             return;
         }
@@ -179,34 +257,80 @@ public class CenteringRecyclerView extends RecyclerView {
             return;
         }
 
-        LayoutManager lm = getLayoutManager();
-        if (lm instanceof LinearLayoutManager) {
-            LinearLayoutManager llm = (LinearLayoutManager) lm;
-            int offset = getCenterOffset(llm.getOrientation(), 0);
-            llm.scrollToPositionWithOffset(position, offset);
-        } else if (lm instanceof StaggeredGridLayoutManager) {
-            final StaggeredGridLayoutManager sglm = (StaggeredGridLayoutManager) lm;
-            int offset = getCenterOffset(sglm.getOrientation(), 0);
-            sglm.scrollToPositionWithOffset(position, offset);
+        AlignmentStrategy strategy = requireAlignmentStrategy();
+        setAlignedPosition(position, ALIGN_CENTER);
+        int orientation = strategy.getOrientation();
+        int size = getAlignedSize(getLayoutManager(), orientation, position);
+        if (size != NO_SIZE) {
+            strategy.scrollToPositionWithOffset(position, getCenterOffsetForSize(orientation, size));
+            return;
+        }
 
-            post(new Runnable() {
-                @Override
-                public void run() {
-                    int first = getFirstVisiblePosition();
-                    int last = getLastVisiblePosition();
-                    int childPosition = 0;
-                    for (int i = first; i < last; i++) {
-                        if (i == position) {
-                            int offset = getCenterOffset(sglm.getOrientation(), childPosition);
-                            sglm.scrollToPositionWithOffset(position, offset);
-                            break;
-                        }
-                        childPosition++;
-                    }
+        // the size is unknown until the target is laid out, re-align it afterwards
+        strategy.scrollToPositionWithOffset(position, getCenterOffset(orientation, getChildAt(0)));
+        postCorrection(position, ALIGN_CENTER);
+    }
+
+    /**
+     * Scrolls a view at the given position by the shortest distance that makes it completely
+     * visible. A target that is laid out is moved with scrollBy(), which only offsets the
+     * children instead of laying the list out again. A target that is not laid out is scrolled
+     * to the end it comes in from, like {@link #snap(int, int)}.
+     *
+     * @param position The adapter position.
+     */
+    public void nearest(int position) {
+        nearest(position, null);
+    }
+
+    /**
+     * Brings a view at the given position into view by the shortest distance, and calls back once it has settled.
+     *
+     * @param position The adapter position.
+     * @param callback The callback or null.
+     * @see #nearest(int)
+     */
+    public void nearest(int position, @Nullable AlignmentCallback callback) {
+        position = toVirtualPosition(position);
+        if (deferRequest(ALIGN_NEAREST, position, SNAPPING_STRATEGY_NONE, callback)) {
+            return;
+        }
+
+        if (mIgnoreIfCompletelyVisible && isCompletelyVisible(position)) {
+            return;
+        }
+
+        if (mIgnoreIfVisible && isVisible(position)) {
+            return;
+        }
+
+        AlignmentStrategy strategy = requireAlignmentStrategy();
+        View child = getLayoutManager().findViewByPosition(position);
+        if (child != null) {
+            setAlignedPosition(position, ALIGN_NEAREST);
+            int delta = -getAlignmentDelta(strategy.getOrientation(), child, ALIGN_NEAREST);
+            if (delta != 0) {
+                // the widget's own scroll, keeps the aligned position
+                if (strategy.getOrientation() == OrientationHelper.HORIZONTAL) {
+                    super.scrollBy(delta, 0);
+                } else {
+                    super.scrollBy(0, delta);
                 }
-            });
-        } else {
-            throw new UnsupportedOperationException("unsupported layout manager");
+            }
+            return;
+        }
+
+        boolean dispatching = mDispatchingRequest;
+        mDispatchingRequest = true;
+        try {
+            int first = findFirstVisiblePosition();
+            if (first != NO_POSITION && position < first) {
+                head(position);
+            } else {
+                tail(position);
+            }
+        } finally {
+            mDispatchingRequest = dispatching;
         }
     }
 
@@ -218,6 +342,23 @@ public class CenteringRecyclerView extends RecyclerView {
      *                 from the both ends.
      */
     public void snap(int position, int strategy) {
+        snap(position, strategy, null);
+    }
+
+    /**
+     * Snaps a view at the given position to a closer end, and calls back once it has settled.
+     *
+     * @param position The adapter position.
+     * @param strategy The snapping strategy.
+     * @param callback The callback or null.
+     * @see #snap(int, int)
+     */
+    public void snap(int position, int strategy, @Nullable AlignmentCallback callback) {
+        position = toVirtualPosition(position);
+        if (deferRequest(ALIGN_SNAP, position, strategy, callback)) {
+            return;
+        }
+
         if (mIgnoreIfCompletelyVisible && isCompletelyVisible(position)) {
             return;
         }
@@ -231,236 +372,3650 @@ public class CenteringRecyclerView extends RecyclerView {
             return;
         }
 
-        int diffFirst = getFirstVisiblePosition() - position;
-        int diffLast = position - getLastVisiblePosition();
-        if (diffFirst > diffLast) {
-            head(position);
-        } else if (diffFirst < diffLast) {
-            tail(position);
-        } else {
-            switch (strategy) {
-                case SNAPPING_STRATEGY_HEAD:
+        int alignment = getSnapAlignment(position, strategy);
+        mCallbackAlignment = alignment;
+
+        // the nested request is part of this one
+        boolean dispatching = mDispatchingRequest;
+        mDispatchingRequest = true;
+        try {
+            switch (alignment) {
+                case ALIGN_HEAD:
                     head(position);
                     break;
-                case SNAPPING_STRATEGY_TAIL:
+                case ALIGN_TAIL:
                     tail(position);
                     break;
-                case SNAPPING_STRATEGY_CENTER:
+                case ALIGN_CENTER:
                     center(position);
                     break;
-                case SNAPPING_STRATEGY_NONE:
-                    // no-op
+                case ALIGN_NEAREST:
+                    nearest(position);
                     break;
             }
+        } finally {
+            mDispatchingRequest = dispatching;
         }
     }
 
     /**
-     * If you want to ignore scrolling when a view at the requested position is completely visible,
-     * set this to true.
+     * Scrolls the view of the item with the given stable ID to top (vertical layout) or left
+     * (horizontal layout).
      *
-     * @param ignoreIfCompletelyVisible true | false
+     * @param id The stable ID.
+     * @return true if an item with the ID exists.
+     * @see #head(int)
+     * @see #getPositionForId(long)
      */
-    public void setIgnoreIfCompletelyVisible(boolean ignoreIfCompletelyVisible) {
-        mIgnoreIfCompletelyVisible = ignoreIfCompletelyVisible;
-    }
+    public boolean headById(long id) {
+        int position = getPositionForId(id);
+        if (position == NO_POSITION) {
+            return false;
+        }
 
+        head(position);
+
+        return true;
+    }
 
     /**
-     * If you want to ignore scrolling when a view at the requested position is visible, set this to
-     * true.
+     * Scrolls the view of the item with the given stable ID to bottom (vertical layout) or right
+     * (horizontal layout).
      *
-     * @param ignoreIfVisible true | false
+     * @param id The stable ID.
+     * @return true if an item with the ID exists.
+     * @see #tail(int)
+     * @see #getPositionForId(long)
      */
-    public void setIgnoreIfVisible(boolean ignoreIfVisible) {
-        mIgnoreIfVisible = ignoreIfVisible;
+    public boolean tailById(long id) {
+        int position = getPositionForId(id);
+        if (position == NO_POSITION) {
+            return false;
+        }
+
+        tail(position);
+
+        return true;
     }
 
     /**
-     * Tests if a view at the given position is visible or not.
+     * Scrolls the view of the item with the given stable ID to center.
      *
-     * @param position The adapter position.
-     * @see #isCompletelyVisible(int)
+     * @param id The stable ID.
+     * @return true if an item with the ID exists.
+     * @see #center(int)
+     * @see #getPositionForId(long)
      */
-    public boolean isVisible(int position) {
-        int first = getFirstVisiblePosition();
-        int last = getLastVisiblePosition();
-        return first <= position && last >= position;
+    public boolean centerById(long id) {
+        int position = getPositionForId(id);
+        if (position == NO_POSITION) {
+            return false;
+        }
+
+        center(position);
+
+        return true;
     }
 
     /**
-     * Tests if a view at the given position is completely visible or not.
+     * Snaps the view of the item with the given stable ID to a closer end.
      *
-     * @param position The adapter position.
-     * @see #isVisible(int)
+     * @param id       The stable ID.
+     * @param strategy The snapping strategy.
+     * @return true if an item with the ID exists.
+     * @see #snap(int, int)
+     * @see #getPositionForId(long)
      */
-    public boolean isCompletelyVisible(int position) {
-        int first = getFirstCompletelyVisiblePosition();
-        int last = getLastCompletelyVisiblePosition();
-        return first <= position && last >= position;
+    public boolean snapById(long id, int strategy) {
+        int position = getPositionForId(id);
+        if (position == NO_POSITION) {
+            return false;
+        }
+
+        snap(position, strategy);
+
+        return true;
     }
 
     /**
-     * Returns the first visible grid position.
+     * Returns the adapter position of the item with the given stable ID. The index is built on
+     * the first call and then kept up to date from adapter notifications, so lookups do not scan
+     * the adapter.
      *
-     * @return the first visible position or RecyclerView.NO_POSITION if any error occurs.
-     * @see #getFirstCompletelyVisiblePosition()
+     * @param id The stable ID.
+     * @return the adapter position or RecyclerView.NO_POSITION if there is no such item or the
+     * adapter does not have stable IDs.
      */
-    public int getFirstVisiblePosition() {
-        LayoutManager lm = getLayoutManager();
-        if (lm instanceof LinearLayoutManager) {
-            LinearLayoutManager llm = (LinearLayoutManager) lm;
+    public int getPositionForId(long id) {
+        Adapter adapter = getAdapter();
+        if (adapter == null || !adapter.hasStableIds()) {
+            return NO_POSITION;
+        }
 
-            return llm.findFirstVisibleItemPosition();
-        } else {
-            StaggeredGridLayoutManager sglm = (StaggeredGridLayoutManager) lm;
-            if (sglm == null) {
-                return NO_POSITION;
+        if (!mIdIndexValid) {
+            // a looping adapter repeats its real items, index them once
+            int itemCount = mLoopingItemCount > 0
+                    ? Math.min(mLoopingItemCount, adapter.getItemCount()) : adapter.getItemCount();
+            mIdIndex.reset(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                mIdIndex.setId(i, adapter.getItemId(i));
             }
-            int[] firstVisibleItemPositions = sglm.findFirstVisibleItemPositions(null);
-            Arrays.sort(firstVisibleItemPositions);
-
-            return firstVisibleItemPositions[0];
+            mIdIndexValid = true;
         }
+
+        return mIdIndex.getPosition(id);
     }
 
     /**
-     * Returns the last visible grid position.
+     * Smoothly scrolls a view at the given position to top (vertical layout) or left (horizontal
+     * layout).
      *
-     * @return the last visible position or RecyclerView.NO_POSITION if any error occurs.
-     * @see #getLastCompletelyVisiblePosition()
+     * @param position The adapter position.
+     * @see #head(int)
      */
-    public int getLastVisiblePosition() {
-        LayoutManager lm = getLayoutManager();
-        if (lm instanceof LinearLayoutManager) {
-            LinearLayoutManager llm = (LinearLayoutManager) lm;
-
-            return llm.findLastVisibleItemPosition();
-        } else {
-            StaggeredGridLayoutManager sglm = (StaggeredGridLayoutManager) lm;
-            if (sglm == null) {
-                return NO_POSITION;
-            }
-            int[] lastVisibleItemPositions = sglm.findLastVisibleItemPositions(null);
-            Arrays.sort(lastVisibleItemPositions);
-
-            return lastVisibleItemPositions[lastVisibleItemPositions.length - 1];
-        }
+    public void smoothHead(int position) {
+        smoothHead(position, null);
     }
 
     /**
-     * Returns the first completely visible grid position.
+     * Smoothly scrolls a view at the given position to top (left), and calls back when the scroll ends.
      *
-     * @return the first completely visible position or RecyclerView.NO_POSITION if any error occurs.
-     * @see #getFirstVisiblePosition()
+     * @param position The adapter position.
+     * @param callback The callback or null.
+     * @see #smoothHead(int)
      */
-    public int getFirstCompletelyVisiblePosition() {
-        LayoutManager lm = getLayoutManager();
-        if (lm instanceof LinearLayoutManager) {
-            LinearLayoutManager llm = (LinearLayoutManager) lm;
-            return llm.findFirstCompletelyVisibleItemPosition();
-        } else {
-            StaggeredGridLayoutManager sglm = (StaggeredGridLayoutManager) lm;
-            if (sglm == null) {
-                return NO_POSITION;
-            }
-            int[] firstVisibleItemPositions = sglm.findFirstCompletelyVisibleItemPositions(null);
-            Arrays.sort(firstVisibleItemPositions);
+    public void smoothHead(int position, @Nullable AlignmentCallback callback) {
+        smoothScrollToAlignment(position, ALIGN_HEAD, callback);
+    }
 
-            return firstVisibleItemPositions[0];
-        }
+    /**
+     * Smoothly scrolls a view at the given position to bottom (vertical layout) or right
+     * (horizontal layout).
+     *
+     * @param position The adapter position.
+     * @see #tail(int)
+     */
+    public void smoothTail(int position) {
+        smoothTail(position, null);
     }
 
     /**
-     * Returns the last completely visible grid position.
+     * Smoothly scrolls a view at the given position to bottom (right), and calls back when the scroll ends.
      *
-     * @return the last completely visible position or RecyclerView.NO_POSITION if any error occurs.
-     * @see #getLastVisiblePosition()
+     * @param position The adapter position.
+     * @param callback The callback or null.
+     * @see #smoothTail(int)
      */
-    public int getLastCompletelyVisiblePosition() {
-        LayoutManager lm = getLayoutManager();
-        if (lm instanceof LinearLayoutManager) {
-            LinearLayoutManager llm = (LinearLayoutManager) lm;
-            return llm.findLastCompletelyVisibleItemPosition();
-        } else {
-            StaggeredGridLayoutManager sglm = (StaggeredGridLayoutManager) lm;
-            if (sglm == null) {
-                return NO_POSITION;
-            }
-            int[] lastVisibleItemPositions = sglm.findLastCompletelyVisibleItemPositions(null);
-            Arrays.sort(lastVisibleItemPositions);
+    public void smoothTail(int position, @Nullable AlignmentCallback callback) {
+        smoothScrollToAlignment(position, ALIGN_TAIL, callback);
+    }
 
-            return lastVisibleItemPositions[lastVisibleItemPositions.length - 1];
-        }
+    /**
+     * Smoothly scrolls a view at the given position to center.
+     *
+     * @param position The adapter position.
+     * @see #center(int)
+     */
+    public void smoothCenter(int position) {
+        smoothCenter(position, null);
     }
 
-    //
-    //
-    //
+    /**
+     * Smoothly scrolls a view at the given position to center, and calls back when the scroll ends.
+     *
+     * @param position The adapter position.
+     * @param callback The callback or null.
+     * @see #smoothCenter(int)
+     */
+    public void smoothCenter(int position, @Nullable AlignmentCallback callback) {
+        smoothScrollToAlignment(position, ALIGN_CENTER, callback);
+    }
 
-    private int mFallbackCenterOffset;
+    /**
+     * Smoothly snaps a view at the given position to a closer end, top or bottom (left or right).
+     *
+     * @param position The adapter position.
+     * @param strategy The snapping strategy. Applied when the given position has the same distance
+     *                 from the both ends.
+     * @see #snap(int, int)
+     */
+    public void smoothSnap(int position, int strategy) {
+        smoothSnap(position, strategy, null);
+    }
 
     /**
-     * Calculates and returns the center offset size.
+     * Smoothly snaps a view at the given position to a closer end, and calls back when the
+     * scroll ends.
      *
-     * @param orientation   The layout orientation.
-     * @param childPosition The visible child position.
-     * @return the center offset or the last known offset if a child at the position is null.
+     * @param position The adapter position.
+     * @param strategy The snapping strategy.
+     * @param callback The callback or null.
+     * @see #smoothSnap(int, int)
      */
-    private int getCenterOffset(int orientation, int childPosition) {
-        View child = getChildAt(childPosition);
-        if (child == null) {
-            return mFallbackCenterOffset;
+    public void smoothSnap(int position, int strategy, @Nullable AlignmentCallback callback) {
+        position = toVirtualPosition(position);
+        setAlignmentCallback(callback, position, NO_ALIGNMENT);
+        mMetrics.mSmooth = true;
+
+        if ((mIgnoreIfCompletelyVisible && isCompletelyVisible(position))
+                || (mIgnoreIfVisible && isVisible(position))) {
+            postAlignmentCallbackCheck();
+            return;
         }
 
-        final Rect r = new Rect();
-        if (getGlobalVisibleRect(r)) {
-            if (orientation == OrientationHelper.HORIZONTAL) {
-                mFallbackCenterOffset = r.width() / 2 - child.getWidth() / 2;
-            } else {
-                mFallbackCenterOffset = r.height() / 2 - child.getHeight() / 2;
-            }
-        } else {
-            if (orientation == OrientationHelper.HORIZONTAL) {
-                mFallbackCenterOffset = getWidth() / 2 - child.getWidth() / 2;
-            } else {
-                mFallbackCenterOffset = getHeight() / 2 - child.getHeight() / 2;
-            }
+        if (position < 0) {
+            smoothScrollToPosition(0);
+            postAlignmentCallbackCheck();
+            return;
         }
 
-        return mFallbackCenterOffset;
+        int alignment = getSnapAlignment(position, strategy);
+        if (alignment != NO_ALIGNMENT) {
+            smoothScrollToAlignment(position, alignment, callback);
+        } else {
+            postAlignmentCallbackCheck();
+        }
     }
 
-    private int mFallbackBottomOffset;
+    /**
+     * Scrolls the items from the given position to the other given position to center as a block.
+     * If the range does not fit in the viewport, or its size is not known, the range priority
+     * decides which end is aligned instead.
+     *
+     * @param from The first adapter position of the range.
+     * @param to   The last adapter position of the range.
+     * @see #setRangePriority(int)
+     * @see #setSelectionRange(int, int, int)
+     */
+    public void centerRange(int from, int to) {
+        centerRange(from, to, null);
+    }
 
     /**
-     * Calculates and returns the bottom offset size.
+     * Scrolls a range of items to center, and calls back once it has settled.
      *
-     * @param orientation   The layout orientation.
-     * @param childPosition The visible child position.
-     * @return the bottom offset or the last known offset if a child at the position is null.
+     * @param from     The first adapter position of the range.
+     * @param to       The last adapter position of the range.
+     * @param callback The callback or null.
+     * @see #centerRange(int, int)
      */
-    private int getBottomOffset(int orientation, int childPosition) {
-        View child = getChildAt(childPosition);
-        if (child == null) {
-            return mFallbackBottomOffset;
-        }
+    public void centerRange(int from, int to, @Nullable AlignmentCallback callback) {
+        alignRange(from, to, ALIGN_CENTER, callback);
+    }
 
-        final Rect r = new Rect();
-        if (getGlobalVisibleRect(r)) {
-            if (orientation == OrientationHelper.HORIZONTAL) {
-                mFallbackBottomOffset = r.width() - child.getWidth();
-            } else {
-                mFallbackBottomOffset = r.height() - child.getHeight();
+    /**
+     * Aligns a range of items as a block with a single scroll. The size of the range is taken
+     * from the laid out children and the size cache, so bringing a section header and its items
+     * into view costs one layout pass. If the range does not fit in the viewport, or its size is
+     * not known, the end chosen by the range priority is aligned to its side instead. With
+     * selection tracking enabled, that end becomes the selected position.
+     *
+     * @param from      The first adapter position of the range.
+     * @param to        The last adapter position of the range.
+     * @param alignment (ALIGN_HEAD | ALIGN_TAIL | ALIGN_CENTER)
+     * @see #setRangePriority(int)
+     */
+    public void setSelectionRange(int from, int to, int alignment) {
+        setSelectionRange(from, to, alignment, null);
+    }
+
+    /**
+     * Aligns a range of items as a block, and calls back once it has settled.
+     *
+     * @param from      The first adapter position of the range.
+     * @param to        The last adapter position of the range.
+     * @param alignment (ALIGN_HEAD | ALIGN_TAIL | ALIGN_CENTER)
+     * @param callback  The callback or null.
+     * @see #setSelectionRange(int, int, int)
+     */
+    public void setSelectionRange(int from, int to, int alignment,
+                                  @Nullable AlignmentCallback callback) {
+        if (alignment < ALIGN_HEAD || alignment > ALIGN_CENTER) {
+            throw new IllegalArgumentException("unknown alignment");
+        }
+
+        setSelectedPosition(toVirtualPosition(mRangePriority == ALIGN_TAIL ? to : from));
+        alignRange(from, to, alignment, callback);
+    }
+
+    /**
+     * Sets which end of a range is aligned when the range does not fit in the viewport. The
+     * default is ALIGN_HEAD, which keeps the first item, e.g. a section header, in view.
+     *
+     * @param priority (ALIGN_HEAD | ALIGN_TAIL)
+     */
+    public void setRangePriority(int priority) {
+        if (priority != ALIGN_HEAD && priority != ALIGN_TAIL) {
+            throw new IllegalArgumentException("unknown priority");
+        }
+
+        mRangePriority = priority;
+    }
+
+    //
+    //
+    //
+
+    private int mRangePriority = ALIGN_HEAD;
+
+    private void alignRange(int from, int to, int alignment, @Nullable AlignmentCallback callback) {
+        if (from > to) {
+            throw new IllegalArgumentException("from > to");
+        }
+
+        int length = to - from;
+        from = toVirtualPosition(from);
+        to = from + length;
+        mPendingRequestRangeEnd = to;
+        if (deferRequest(ALIGN_RANGE, from, alignment, callback)) {
+            return;
+        }
+
+        if (mIgnoreIfCompletelyVisible && isCompletelyVisible(from) && isCompletelyVisible(to)) {
+            return;
+        }
+
+        if (mIgnoreIfVisible && isVisible(from) && isVisible(to)) {
+            return;
+        }
+
+        if (from < 0) {
+            scrollToPosition(0);
+            return;
+        }
+
+        AlignmentStrategy strategy = requireAlignmentStrategy();
+        int orientation = strategy.getOrientation();
+        ensureViewport();
+        int viewportStart;
+        int viewportSize;
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            viewportStart = mViewportLeft;
+            viewportSize = mViewportWidth;
+        } else {
+            viewportStart = mViewportTop;
+            viewportSize = mViewportHeight;
+        }
+
+        int size = getRangeSize(getLayoutManager(), orientation, from, to, viewportSize);
+        if (size != NO_SIZE && size <= viewportSize) {
+            int offset;
+            if (alignment == ALIGN_TAIL) {
+                offset = AlignmentMath.getBottomOffset(viewportStart, viewportSize, size);
+            } else if (alignment == ALIGN_CENTER) {
+                offset = AlignmentMath.getCenterOffset(viewportStart, viewportSize, size);
+            } else {
+                offset = 0;
+            }
+            // no single item is aligned, so there is nothing to keep or to measure an error on
+            mAlignedPosition = NO_POSITION;
+            mCallbackAlignment = NO_ALIGNMENT;
+            strategy.scrollToPositionWithOffset(from, offset);
+            return;
+        }
+
+        // the nested request is part of this one
+        boolean dispatching = mDispatchingRequest;
+        mDispatchingRequest = true;
+        try {
+            if (mRangePriority == ALIGN_TAIL) {
+                mCallbackPosition = to;
+                mCallbackAlignment = ALIGN_TAIL;
+                tail(to);
+            } else {
+                mCallbackAlignment = ALIGN_HEAD;
+                head(from);
+            }
+        } finally {
+            mDispatchingRequest = dispatching;
+        }
+    }
+
+    /**
+     * Returns the size of a range of items along the layout orientation, from the children if
+     * both ends are laid out and from the item sizes otherwise. Summing stops once the range is
+     * larger than the limit, so long ranges cost no more than a screen of items.
+     *
+     * @param lm          The layout manager.
+     * @param orientation The layout orientation.
+     * @param from        The first adapter position.
+     * @param to          The last adapter position.
+     * @param limit       The size beyond which the exact size does not matter.
+     * @return the size, more than the limit, or NO_SIZE if it is not known.
+     */
+    private int getRangeSize(LayoutManager lm, int orientation, int from, int to, int limit) {
+        View first = lm.findViewByPosition(from);
+        View last = lm.findViewByPosition(to);
+        if (first != null && last != null) {
+            int firstStart = getChildOffset(orientation, first);
+            int lastStart = getChildOffset(orientation, last);
+            int start = Math.min(firstStart, lastStart);
+            int end = Math.max(firstStart + getDecoratedSize(orientation, first),
+                    lastStart + getDecoratedSize(orientation, last));
+            return end - start;
+        }
+
+        if (lm instanceof StaggeredGridLayoutManager) {
+            // items of a range are spread over the spans
+            return NO_SIZE;
+        }
+
+        int itemCount = lm.getItemCount();
+        int total = 0;
+        int position = from;
+        while (position <= to && total <= limit) {
+            int size = getAlignedSize(lm, orientation, position);
+            if (size == NO_SIZE) {
+                return NO_SIZE;
+            }
+            total += size;
+            position = mGridStrategy != null
+                    ? mGridStrategy.getSpanGroupEnd(position, itemCount) + 1 : position + 1;
+        }
+
+        return total;
+    }
+
+    /**
+     * If you want alignment requests to be coalesced, set this to true. Requests are then queued
+     * and only the most recent one is run on the next animation frame, so bursts of calls cost a
+     * single layout.
+     *
+     * @param coalesceRequests true | false
+     */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        mCoalesceRequests = coalesceRequests;
+        if (!coalesceRequests && mRequestPending) {
+            removeCallbacks(mRequestDispatcher);
+            mRequestDispatcher.run();
+        }
+    }
+
+    /**
+     * Sets how far away, in screens, a smooth scroll target has to be before the list jumps
+     * close to it and only animates the last screen. This keeps the number of items bound along
+     * the way bounded however far the target is.
+     *
+     * @param screens The number of screens. 0 disables jumping.
+     */
+    public void setSmoothScrollJumpThreshold(int screens) {
+        mSmoothScrollJumpThreshold = screens;
+    }
+
+    /**
+     * Sets the maximum duration of a smooth scroll.
+     *
+     * @param maxDuration The duration cap in milliseconds. 0 or less means no cap.
+     */
+    public void setSmoothScrollMaxDuration(int maxDuration) {
+        mSmoothScrollMaxDuration = maxDuration;
+    }
+
+    /**
+     * If you want the widget to keep track of the position passed to
+     * {@link #setSelection(int, int)}, set this to true. The selected position then follows
+     * adapter insertions, removals and moves, and a selection change only notifies the previously
+     * and newly selected items with {@link #PAYLOAD_SELECTION}.
+     *
+     * @param enabled true | false
+     */
+    public void setSelectionTrackingEnabled(boolean enabled) {
+        mSelectionTrackingEnabled = enabled;
+        if (!enabled) {
+            mSelectedPosition = NO_POSITION;
+        }
+    }
+
+    /**
+     * Returns the selected position.
+     *
+     * @return the adapter position or RecyclerView.NO_POSITION if nothing is selected or
+     * selection tracking is disabled.
+     * @see #setSelectionTrackingEnabled(boolean)
+     */
+    public int getSelectedPosition() {
+        return getRealPosition(mSelectedPosition);
+    }
+
+    /**
+     * Tests if the item at the given position is selected. Meant to be called from
+     * onBindViewHolder().
+     *
+     * @param position The adapter position.
+     */
+    public boolean isSelected(int position) {
+        return position != NO_POSITION && getRealPosition(position) == getRealPosition(mSelectedPosition);
+    }
+
+    //
+    //
+    //
+
+    private boolean mSelectionTrackingEnabled;
+    private int mSelectedPosition = NO_POSITION;
+
+    /**
+     * Moves the selection and rebinds only the two items whose selection state changed.
+     */
+    private void setSelectedPosition(int position) {
+        if (!mSelectionTrackingEnabled || position == mSelectedPosition) {
+            return;
+        }
+
+        int oldPosition = mSelectedPosition;
+        mSelectedPosition = position;
+
+        Adapter adapter = getAdapter();
+        if (adapter == null) {
+            return;
+        }
+        int itemCount = adapter.getItemCount();
+        if (mLoopingItemCount > 0) {
+            if (getRealPosition(oldPosition) != getRealPosition(position)) {
+                notifySelectionCopies(adapter, oldPosition, itemCount);
+                notifySelectionCopies(adapter, position, itemCount);
+            }
+            return;
+        }
+        if (oldPosition >= 0 && oldPosition < itemCount) {
+            adapter.notifyItemChanged(oldPosition, PAYLOAD_SELECTION);
+        }
+        if (position >= 0 && position < itemCount) {
+            adapter.notifyItemChanged(position, PAYLOAD_SELECTION);
+        }
+    }
+
+    /**
+     * Rebinds every copy of a looping item that is attached, or close enough to sit in the view
+     * cache, since {@link #isSelected(int)} is true for all copies of the selected item.
+     */
+    private void notifySelectionCopies(Adapter adapter, int position, int itemCount) {
+        if (position < 0 || position >= itemCount) {
+            return;
+        }
+
+        int first = position;
+        int last = position;
+        for (int i = 0, childCount = getChildCount(); i < childCount; i++) {
+            int childPosition = getChildAdapterPosition(getChildAt(i));
+            if (childPosition != NO_POSITION) {
+                first = Math.min(first, childPosition);
+                last = Math.max(last, childPosition);
+            }
+        }
+
+        int loopCount = mLoopingItemCount;
+        int start = Math.max(0, first - loopCount);
+        int end = Math.min(itemCount - 1, last + loopCount);
+        int real = getRealPosition(position);
+        for (int p = start + (real - getRealPosition(start) + loopCount) % loopCount; p <= end;
+             p += loopCount) {
+            adapter.notifyItemChanged(p, PAYLOAD_SELECTION);
+        }
+    }
+
+    /**
+     * Sets a listener that is notified when the item closest to the center of the viewport
+     * changes.
+     *
+     * @param listener The listener or null.
+     */
+    public void setOnCenterItemChangedListener(@Nullable OnCenterItemChangedListener listener) {
+        mOnCenterItemChangedListener = listener;
+        mCenterPosition = NO_POSITION;
+        mCenterChildIndex = 0;
+        if (listener != null) {
+            updateCenterItem();
+        }
+    }
+
+    /**
+     * Returns the adapter position of the item closest to the center of the viewport. Only
+     * tracked while an {@link OnCenterItemChangedListener} is set.
+     *
+     * @return the adapter position or RecyclerView.NO_POSITION.
+     */
+    public int getCenterItemPosition() {
+        return getRealPosition(mCenterPosition);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the item closest to the center of
+     * the viewport changes.
+     */
+    public interface OnCenterItemChangedListener {
+        /**
+         * @param recyclerView The view.
+         * @param position     The adapter position of the new center item, or
+         *                     RecyclerView.NO_POSITION if there are no items.
+         */
+        void onCenterItemChanged(@NonNull CenteringRecyclerView recyclerView, int position);
+    }
+
+    //
+    //
+    //
+
+    private OnCenterItemChangedListener mOnCenterItemChangedListener;
+    private int mCenterPosition = NO_POSITION;
+
+    // child index of the last center item, the starting point of the next search
+    private int mCenterChildIndex;
+
+    /**
+     * Finds the item closest to the viewport center and notifies the listener if it changed.
+     * Children of a LinearLayoutManager (and GridLayoutManager) are ordered along the layout
+     * axis, so their distance to the center falls and then rises with the child index. The
+     * search therefore starts from the previous center child and only walks towards the center,
+     * which is a couple of children per frame. Other layout managers do not order their children
+     * and are scanned.
+     */
+    private void updateCenterItem() {
+        if (mOnCenterItemChangedListener == null || mAlignmentStrategy == null) {
+            return;
+        }
+
+        int childCount = getChildCount();
+        int index = -1;
+        if (childCount > 0) {
+            int orientation = mAlignmentStrategy.getOrientation();
+            ensureViewport();
+            int center = orientation == OrientationHelper.HORIZONTAL
+                    ? 2 * mViewportLeft + mViewportWidth
+                    : 2 * mViewportTop + mViewportHeight;
+            if (getLayoutManager() instanceof LinearLayoutManager) {
+                index = findCenterChild(orientation, center, childCount);
+            } else {
+                index = scanCenterChild(orientation, center, childCount);
+            }
+        }
+
+        int position;
+        if (index == -1) {
+            position = NO_POSITION;
+        } else {
+            mCenterChildIndex = index;
+            position = getChildAdapterPosition(getChildAt(index));
+            if (position == NO_POSITION) {
+                // the child is being removed, wait for the layout that follows
+                return;
+            }
+        }
+
+        if (position != mCenterPosition) {
+            mCenterPosition = position;
+            mOnCenterItemChangedListener.onCenterItemChanged(this, getRealPosition(position));
+        }
+    }
+
+    private int findCenterChild(int orientation, int center, int childCount) {
+        int best = Math.min(mCenterChildIndex, childCount - 1);
+        int bestDistance = getCenterDistance(orientation, getChildAt(best), center);
+
+        // walk forward while the distance does not grow, rows of a grid share one distance
+        int start = best;
+        int distance = bestDistance;
+        for (int i = start + 1; i < childCount; i++) {
+            int d = getCenterDistance(orientation, getChildAt(i), center);
+            if (d > distance) {
+                break;
+            }
+            distance = d;
+            if (d < bestDistance) {
+                best = i;
+                bestDistance = d;
+            }
+        }
+
+        if (best == start) {
+            distance = bestDistance;
+            for (int i = start - 1; i >= 0; i--) {
+                int d = getCenterDistance(orientation, getChildAt(i), center);
+                if (d > distance) {
+                    break;
+                }
+                distance = d;
+                if (d <= bestDistance) {
+                    best = i;
+                    bestDistance = d;
+                }
+            }
+        } else {
+            // report the first item of the center row
+            while (best > 0
+                    && getCenterDistance(orientation, getChildAt(best - 1), center) == bestDistance) {
+                best--;
+            }
+        }
+
+        return best;
+    }
+
+    private int scanCenterChild(int orientation, int center, int childCount) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < childCount; i++) {
+            int d = getCenterDistance(orientation, getChildAt(i), center);
+            if (d < bestDistance) {
+                best = i;
+                bestDistance = d;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Returns twice the distance between the center of a child and the given doubled viewport
+     * center, which keeps odd sizes exact.
+     */
+    private int getCenterDistance(int orientation, View child, int center) {
+        return AlignmentMath.getCenterDistance(getChildOffset(orientation, child),
+                getDecoratedSize(orientation, child), center);
+    }
+
+    /**
+     * Sets a transformer that is given every child's distance from the viewport center on each
+     * scroll frame and after each layout. The transformer is meant to change only properties that
+     * are applied at draw time, such as scale, alpha, rotation and translation, so scrolling a
+     * gallery does not cost a layout or measure pass. Properties it sets are not reset when the
+     * transformer is removed.
+     *
+     * @param transformer The transformer or null.
+     * @see #setCenterDistanceTransformer(CenterDistanceTransformer, int)
+     */
+    public void setCenterDistanceTransformer(@Nullable CenterDistanceTransformer transformer) {
+        setCenterDistanceTransformer(transformer, View.LAYER_TYPE_NONE);
+    }
+
+    /**
+     * Sets a transformer and the layer type children use while the list is scrolling. A hardware
+     * layer lets alpha and other property changes be composited without redrawing the children.
+     * Children go back to LAYER_TYPE_NONE when the scroll ends or when they are detached.
+     *
+     * @param transformer The transformer or null.
+     * @param layerType   (View.LAYER_TYPE_NONE | View.LAYER_TYPE_SOFTWARE | View.LAYER_TYPE_HARDWARE)
+     * @see #setCenterDistanceTransformer(CenterDistanceTransformer)
+     */
+    public void setCenterDistanceTransformer(@Nullable CenterDistanceTransformer transformer,
+                                             int layerType) {
+        if (mTransformLayerType != View.LAYER_TYPE_NONE) {
+            setChildLayerType(View.LAYER_TYPE_NONE);
+        }
+        mCenterDistanceTransformer = transformer;
+        mTransformLayerType = transformer != null ? layerType : View.LAYER_TYPE_NONE;
+        if (transformer != null) {
+            if (getScrollState() != SCROLL_STATE_IDLE) {
+                setChildLayerType(mTransformLayerType);
+            }
+            transformChildren();
+        }
+    }
+
+    /**
+     * Interface definition for a callback that transforms children by their distance from the
+     * center of the viewport.
+     */
+    public interface CenterDistanceTransformer {
+        /**
+         * Called for each child on every scroll frame, so it should not allocate.
+         *
+         * @param child    The child view.
+         * @param distance The signed distance between the child center and the viewport center
+         *                 along the layout orientation, as a fraction of half the viewport size:
+         *                 0 at the center, -1 at the start edge and 1 at the end edge.
+         */
+        void transform(@NonNull View child, float distance);
+    }
+
+    //
+    //
+    //
+
+    private CenterDistanceTransformer mCenterDistanceTransformer;
+    private int mTransformLayerType = View.LAYER_TYPE_NONE;
+
+    /**
+     * Passes each child's normalized center distance to the transformer, in one pass over the
+     * children. The distance comes from the layout position, so translations set by the
+     * transformer do not feed back into it.
+     */
+    private void transformChildren() {
+        CenterDistanceTransformer transformer = mCenterDistanceTransformer;
+        if (transformer == null || mAlignmentStrategy == null) {
+            return;
+        }
+
+        int childCount = getChildCount();
+        if (childCount == 0) {
+            return;
+        }
+
+        int orientation = mAlignmentStrategy.getOrientation();
+        ensureViewport();
+        int viewportStart;
+        int viewportSize;
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            viewportStart = mViewportLeft;
+            viewportSize = mViewportWidth;
+        } else {
+            viewportStart = mViewportTop;
+            viewportSize = mViewportHeight;
+        }
+        int center = 2 * viewportStart + viewportSize;
+        for (int i = 0; i < childCount; i++) {
+            View child = getChildAt(i);
+            float distance = AlignmentMath.getNormalizedCenterDistance(
+                    getChildOffset(orientation, child), getDecoratedSize(orientation, child),
+                    center, viewportSize);
+            transformer.transform(child, distance);
+        }
+    }
+
+    private void setChildLayerType(int layerType) {
+        for (int i = 0, childCount = getChildCount(); i < childCount; i++) {
+            View child = getChildAt(i);
+            if (child.getLayerType() != layerType) {
+                child.setLayerType(layerType, null);
+            }
+        }
+    }
+
+    /**
+     * Sets how many items around a target {@link #prefetchAround(int)} prepares view holders for.
+     *
+     * @param before The number of items before the target.
+     * @param after  The number of items after the target.
+     */
+    public void setPrefetchItemCount(int before, int after) {
+        mPrefetchItemCountBefore = Math.max(0, before);
+        mPrefetchItemCountAfter = Math.max(0, after);
+    }
+
+    /**
+     * Creates view holders for the items around the given position ahead of a jump to it, so the
+     * first layout at the target binds pooled holders instead of inflating them. Holders are
+     * created on the following animation frames within a small time budget per frame and put
+     * into the RecycledViewPool; holders already pooled for a view type are taken into account.
+     * Call this as soon as the target is known, e.g. when a "jump to" control gets focus.
+     * <p>
+     * If the pool is full for a view type, its limit is raised for the jump and restored after the
+     * layout pass that lays out the target, which drops holders that were not used.
+     *
+     * @param position The adapter position of the upcoming target.
+     * @see #setPrefetchItemCount(int, int)
+     */
+    public void prefetchAround(int position) {
+        Adapter adapter = getAdapter();
+        if (adapter == null) {
+            return;
+        }
+
+        position = toVirtualPosition(position);
+        restorePoolLimits();
+        mPrefetchTarget = position;
+        int itemCount = adapter.getItemCount();
+        int start = Math.max(0, position - mPrefetchItemCountBefore);
+        int end = Math.min(itemCount - 1, position + mPrefetchItemCountAfter);
+        mPrefetchCounts.clear();
+        for (int i = start; i <= end; i++) {
+            int viewType = adapter.getItemViewType(i);
+            mPrefetchCounts.put(viewType, mPrefetchCounts.get(viewType) + 1);
+        }
+
+        RecycledViewPool pool = getRecycledViewPool();
+        boolean pending = false;
+        for (int i = 0, size = mPrefetchCounts.size(); i < size; i++) {
+            int viewType = mPrefetchCounts.keyAt(i);
+            int missing = mPrefetchCounts.valueAt(i) - pool.getRecycledViewCount(viewType);
+            mPrefetchCounts.put(viewType, missing);
+            pending |= missing > 0;
+        }
+
+        removeCallbacks(mPrefetcher);
+        if (pending) {
+            mPrefetchAdapter = adapter;
+            ViewCompat.postOnAnimation(this, mPrefetcher);
+        }
+    }
+
+    //
+    //
+    //
+
+    private static final int DEFAULT_PREFETCH_ITEM_COUNT = 5;
+
+    // time spent creating holders per frame
+    private static final long PREFETCH_FRAME_BUDGET_NS = 4000000L;
+
+    private int mPrefetchItemCountBefore = DEFAULT_PREFETCH_ITEM_COUNT;
+    private int mPrefetchItemCountAfter = DEFAULT_PREFETCH_ITEM_COUNT;
+
+    // view type -> number of holders still to create
+    private final SparseIntArray mPrefetchCounts = new SparseIntArray();
+    private Adapter mPrefetchAdapter;
+
+    // view type -> pool limit before prefetching raised it
+    private final SparseIntArray mRaisedPoolLimits = new SparseIntArray();
+    private int mPrefetchTarget = NO_POSITION;
+
+    private final Runnable mPrefetcher = new Runnable() {
+        @Override
+        public void run() {
+            Adapter adapter = getAdapter();
+            if (adapter == null || adapter != mPrefetchAdapter) {
+                mPrefetchAdapter = null;
+                return;
+            }
+
+            RecycledViewPool pool = getRecycledViewPool();
+            long deadline = System.nanoTime() + PREFETCH_FRAME_BUDGET_NS;
+            for (int i = 0, size = mPrefetchCounts.size(); i < size; i++) {
+                int viewType = mPrefetchCounts.keyAt(i);
+                int missing = mPrefetchCounts.valueAt(i);
+                while (missing > 0) {
+                    if (System.nanoTime() > deadline) {
+                        mPrefetchCounts.put(viewType, missing);
+                        ViewCompat.postOnAnimation(CenteringRecyclerView.this, this);
+                        return;
+                    }
+
+                    ViewHolder holder = adapter.createViewHolder(CenteringRecyclerView.this, viewType);
+                    int count = pool.getRecycledViewCount(viewType);
+                    pool.putRecycledView(holder);
+                    if (pool.getRecycledViewCount(viewType) == count) {
+                        // the pool is full for this type, make room for the whole neighborhood
+                        // until the jump has been laid out
+                        if (mRaisedPoolLimits.indexOfKey(viewType) < 0) {
+                            mRaisedPoolLimits.put(viewType, count);
+                        }
+                        pool.setMaxRecycledViews(viewType, count + missing);
+                        pool.putRecycledView(holder);
+                    }
+                    missing--;
+                }
+                mPrefetchCounts.put(viewType, 0);
+            }
+            mPrefetchAdapter = null;
+        }
+    };
+
+    /**
+     * Puts back the pool limits raised by prefetching, which also drops the holders beyond them.
+     */
+    private void restorePoolLimits() {
+        mPrefetchTarget = NO_POSITION;
+        if (mRaisedPoolLimits.size() == 0) {
+            return;
+        }
+
+        RecycledViewPool pool = getRecycledViewPool();
+        for (int i = 0, size = mRaisedPoolLimits.size(); i < size; i++) {
+            pool.setMaxRecycledViews(mRaisedPoolLimits.keyAt(i), mRaisedPoolLimits.valueAt(i));
+        }
+        mRaisedPoolLimits.clear();
+    }
+
+    /**
+     * Restores the pool limits once the prefetch target has been laid out, that is after the
+     * layout pass of the jump has taken the holders it needed.
+     */
+    private void restorePoolLimitsAfterJump() {
+        if (mPrefetchTarget == NO_POSITION || mPrefetchAdapter != null) {
+            return;
+        }
+
+        LayoutManager lm = getLayoutManager();
+        if (lm != null && lm.findViewByPosition(mPrefetchTarget) != null) {
+            restorePoolLimits();
+        }
+    }
+
+    /**
+     * If you want D-pad keys to be handled by the widget, set this to true. Each key press moves
+     * the focus (and the selection, if tracked) by one item, or by one row (column) across a
+     * grid, and the target is scrolled to center by a single continuous animation. Presses that
+     * arrive while the animation is running, e.g. from a held key, move the target further
+     * instead of restarting the scroll.
+     *
+     * @param enabled true | false
+     * @see #setKeyNavigationMaxSpeed(int)
+     */
+    public void setKeyNavigationEnabled(boolean enabled) {
+        mKeyNavigationEnabled = enabled;
+        if (!enabled) {
+            stopKeyNavigation();
+        }
+    }
+
+    /**
+     * Sets the maximum scroll speed of key navigation.
+     *
+     * @param pixelsPerSecond The speed in pixels per second.
+     */
+    public void setKeyNavigationMaxSpeed(int pixelsPerSecond) {
+        mKeyNavigationMaxSpeed = Math.max(1, pixelsPerSecond);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        if (mKeyNavigationEnabled && event.getAction() == KeyEvent.ACTION_DOWN
+                && moveByKey(event.getKeyCode())) {
+            return true;
+        }
+
+        return super.dispatchKeyEvent(event);
+    }
+
+    //
+    //
+    //
+
+    private static final int DEFAULT_KEY_NAVIGATION_MAX_SPEED_DP = 3000;
+
+    // time it takes to cover most of the remaining distance, in seconds
+    private static final float KEY_NAVIGATION_EASE_TIME = 0.1f;
+
+    // longest frame accounted for, so a stalled frame does not turn into a jump
+    private static final float KEY_NAVIGATION_MAX_FRAME_TIME = 0.05f;
+
+    private boolean mKeyNavigationEnabled;
+    private int mKeyNavigationMaxSpeed;
+    private boolean mKeyNavigating;
+    private int mKeyTarget = NO_POSITION;
+    private boolean mKeyTargetFocusPending;
+    private long mKeyFrameTime;
+
+    private final Runnable mKeyNavigator = new Runnable() {
+        @Override
+        public void run() {
+            stepKeyNavigation();
+        }
+    };
+
+    /**
+     * Moves the key navigation target for a D-pad key.
+     *
+     * @return true if the key was consumed.
+     */
+    private boolean moveByKey(int keyCode) {
+        Adapter adapter = getAdapter();
+        LayoutManager lm = getLayoutManager();
+        if (adapter == null || lm == null || mAlignmentStrategy == null) {
+            return false;
+        }
+
+        int itemCount = adapter.getItemCount();
+        int orientation = mAlignmentStrategy.getOrientation();
+        boolean reverse = lm instanceof LinearLayoutManager
+                && ((LinearLayoutManager) lm).getReverseLayout();
+        int direction = getKeyDirection(keyCode, orientation, reverse);
+        boolean crossAxis = false;
+        if (direction == 0) {
+            crossAxis = true;
+            direction = getKeyDirection(keyCode, orientation == OrientationHelper.HORIZONTAL
+                    ? OrientationHelper.VERTICAL : OrientationHelper.HORIZONTAL, false);
+            if (direction == 0) {
+                return false;
+            }
+        }
+
+        int current = getKeyNavigationPosition();
+        if (current == NO_POSITION || current >= itemCount) {
+            return false;
+        }
+
+        int target;
+        if (crossAxis) {
+            // only moves within a row (column), leaving the list is up to focus search
+            if (mGridStrategy == null) {
+                return false;
+            }
+            target = current + direction;
+            if (target < mGridStrategy.getSpanGroupStart(current)
+                    || target > mGridStrategy.getSpanGroupEnd(current, itemCount)) {
+                return false;
+            }
+        } else if (mGridStrategy != null) {
+            target = mGridStrategy.getPositionInAdjacentSpanGroup(current, direction, itemCount);
+        } else {
+            target = current + direction;
+        }
+
+        if (target < 0 || target >= itemCount) {
+            return false;
+        }
+
+        setKeyNavigationTarget(target);
+
+        return true;
+    }
+
+    /**
+     * Returns +1 for a key that moves towards the end of the given axis, -1 for one that moves
+     * towards its start and 0 for other keys.
+     */
+    private int getKeyDirection(int keyCode, int axis, boolean reverse) {
+        int direction = 0;
+        if (axis == OrientationHelper.VERTICAL) {
+            if (keyCode == KeyEvent.KEYCODE_DPAD_DOWN) {
+                direction = 1;
+            } else if (keyCode == KeyEvent.KEYCODE_DPAD_UP) {
+                direction = -1;
+            }
+        } else {
+            if (keyCode == KeyEvent.KEYCODE_DPAD_RIGHT) {
+                direction = 1;
+            } else if (keyCode == KeyEvent.KEYCODE_DPAD_LEFT) {
+                direction = -1;
+            }
+            if (ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL) {
+                direction = -direction;
+            }
+        }
+
+        return reverse ? -direction : direction;
+    }
+
+    /**
+     * Returns the position key navigation moves from: the running target, the focused item, the
+     * selected item or the first visible item.
+     */
+    private int getKeyNavigationPosition() {
+        if (mKeyNavigating) {
+            return mKeyTarget;
+        }
+
+        View focused = getFocusedChild();
+        if (focused != null) {
+            int position = getChildAdapterPosition(focused);
+            if (position != NO_POSITION) {
+                return position;
+            }
+        }
+
+        if (mSelectedPosition != NO_POSITION) {
+            return mSelectedPosition;
+        }
+
+        return findFirstVisiblePosition();
+    }
+
+    private void setKeyNavigationTarget(int target) {
+        cancelCorrection();
+        setAlignmentCallback(null, target, ALIGN_CENTER);
+
+        mKeyTarget = target;
+        mKeyTargetFocusPending = hasFocus();
+        setSelectedPosition(target);
+
+        if (!mKeyNavigating) {
+            mAlignedPosition = NO_POSITION;
+            stopScroll();
+            mKeyNavigating = true;
+            mKeyFrameTime = System.nanoTime();
+            ViewCompat.postOnAnimation(this, mKeyNavigator);
+        }
+    }
+
+    /**
+     * Scrolls one frame towards the key navigation target. The step covers a share of the
+     * remaining distance, which gives a smooth stop, and is capped by the maximum speed, which
+     * keeps a far target from being reached by a jump.
+     */
+    private void stepKeyNavigation() {
+        LayoutManager lm = getLayoutManager();
+        if (!mKeyNavigating || lm == null || mAlignmentStrategy == null || getChildCount() == 0) {
+            stopKeyNavigation();
+            return;
+        }
+
+        long now = System.nanoTime();
+        float frameTime = Math.min((now - mKeyFrameTime) / 1e9f, KEY_NAVIGATION_MAX_FRAME_TIME);
+        mKeyFrameTime = now;
+
+        int orientation = mAlignmentStrategy.getOrientation();
+        View child = lm.findViewByPosition(mKeyTarget);
+        int distance;
+        if (child != null) {
+            distance = -getAlignmentDelta(orientation, child, ALIGN_CENTER);
+            if (mKeyTargetFocusPending && lm.isViewPartiallyVisible(child, true, true)) {
+                // a completely visible child gets focus without the layout manager scrolling it
+                mKeyTargetFocusPending = false;
+                child.requestFocus();
+            }
+        } else {
+            // not laid out yet, head towards it at full speed
+            int first = findFirstVisiblePosition();
+            if (first == NO_POSITION) {
+                first = getChildLayoutPosition(getChildAt(0));
+            }
+            boolean towardsStart = mKeyTarget < first;
+            if (isLayoutReversed(lm, orientation)) {
+                towardsStart = !towardsStart;
+            }
+            distance = towardsStart ? -Integer.MAX_VALUE : Integer.MAX_VALUE;
+        }
+
+        int direction = distance > 0 ? 1 : -1;
+        boolean canScroll = orientation == OrientationHelper.HORIZONTAL
+                ? canScrollHorizontally(direction)
+                : canScrollVertically(direction);
+        if (distance == 0 || !canScroll) {
+            finishKeyNavigation(child);
+            return;
+        }
+
+        int maxStep = Math.max(1, (int) (mKeyNavigationMaxSpeed * frameTime));
+        int step = (int) (distance * Math.min(1f, frameTime / KEY_NAVIGATION_EASE_TIME));
+        if (step == 0) {
+            step = direction;
+        }
+        step = Math.max(-maxStep, Math.min(maxStep, step));
+
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            super.scrollBy(step, 0);
+        } else {
+            super.scrollBy(0, step);
+        }
+        ViewCompat.postOnAnimation(this, mKeyNavigator);
+    }
+
+    /**
+     * Tests if adapter positions grow towards the start of the screen, which is the case for a
+     * reversed layout manager and for a horizontal one in a right-to-left layout, or both undoing
+     * each other.
+     */
+    private boolean isLayoutReversed(LayoutManager lm, int orientation) {
+        boolean reverse;
+        if (lm instanceof LinearLayoutManager) {
+            reverse = ((LinearLayoutManager) lm).getReverseLayout();
+        } else if (lm instanceof StaggeredGridLayoutManager) {
+            reverse = ((StaggeredGridLayoutManager) lm).getReverseLayout();
+        } else {
+            reverse = false;
+        }
+        if (orientation == OrientationHelper.HORIZONTAL
+                && ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL) {
+            reverse = !reverse;
+        }
+
+        return reverse;
+    }
+
+    private void finishKeyNavigation(View child) {
+        if (child != null && mKeyTargetFocusPending) {
+            child.requestFocus();
+        }
+        setAlignedPosition(mKeyTarget, ALIGN_CENTER);
+        stopKeyNavigation();
+    }
+
+    private void stopKeyNavigation() {
+        removeCallbacks(mKeyNavigator);
+        mKeyNavigating = false;
+        mKeyTarget = NO_POSITION;
+        mKeyTargetFocusPending = false;
+    }
+
+    /**
+     * If you want the last aligned item to stay where it is when the adapter changes, set this to
+     * true. The position passed to {@link #head(int)}, {@link #tail(int)} or {@link #center(int)}
+     * (or reached by key navigation) follows insertions, removals and moves, and its alignment is
+     * re-applied as part of the layout pass that handles the update. The lock is released when
+     * the list is scrolled by anything but an alignment request, e.g. a drag, scrollToPosition()
+     * or a smooth scroll, or when the item is removed.
+     *
+     * @param enabled true | false
+     */
+    public void setAnchorLockEnabled(boolean enabled) {
+        mAnchorLockEnabled = enabled;
+    }
+
+    /**
+     * Returns the adapter position the anchor lock currently holds.
+     *
+     * @return the adapter position or RecyclerView.NO_POSITION if nothing is locked.
+     * @see #setAnchorLockEnabled(boolean)
+     */
+    public int getAnchorLockPosition() {
+        if (!mAnchorLockEnabled || mAlignedAlignment == ALIGN_NEAREST) {
+            return NO_POSITION;
+        }
+
+        return getRealPosition(mAlignedPosition);
+    }
+
+    //
+    //
+    //
+
+    private boolean mAnchorLockEnabled;
+
+    /**
+     * Re-issues the locked alignment from an adapter observer callback. The scroll position set
+     * here is picked up by the layout pass that applies the adapter update, so the anchor does
+     * not move in between. The item size is taken from the size cache, which the observer has
+     * already shifted, since the children still carry their old positions at this point.
+     */
+    private void applyAnchorLock() {
+        // the virtual position, getAnchorLockPosition() reports the real one
+        int position = mAlignedPosition;
+        if (!mAnchorLockEnabled || mAlignedAlignment == ALIGN_NEAREST || position == NO_POSITION
+                || mAlignmentStrategy == null || mLayoutRequestPending) {
+            return;
+        }
+
+        int orientation = mAlignmentStrategy.getOrientation();
+        int offset;
+        if (mAlignedAlignment == ALIGN_HEAD) {
+            offset = 0;
+        } else {
+            int size = getCachedAlignedSize(getLayoutManager(), orientation, position);
+            if (size == NO_SIZE) {
+                // keeps the current head offset and re-aligns once the anchor is laid out
+                postCorrection(position, mAlignedAlignment);
+                return;
+            }
+            offset = mAlignedAlignment == ALIGN_TAIL
+                    ? getBottomOffsetForSize(orientation, size)
+                    : getCenterOffsetForSize(orientation, size);
+        }
+
+        mAlignmentStrategy.scrollToPositionWithOffset(position, offset);
+    }
+
+    /**
+     * Returns the size an item was aligned with, the size of its row for a grid like
+     * {@link #getAlignedSize(LayoutManager, int, int)}, but read from the size cache instead of
+     * the children.
+     *
+     * @param lm          The layout manager.
+     * @param orientation The layout orientation.
+     * @param position    The adapter position.
+     * @return the size or NO_SIZE if it is not known.
+     */
+    private int getCachedAlignedSize(LayoutManager lm, int orientation, int position) {
+        if (mGridStrategy == null || lm == null) {
+            return getCachedSize(lm, orientation, position);
+        }
+
+        int start = mGridStrategy.getSpanGroupStart(position);
+        int end = mGridStrategy.getSpanGroupEnd(position, lm.getItemCount());
+        int groupSize = NO_SIZE;
+        for (int i = start; i <= end; i++) {
+            int size = getCachedSize(lm, orientation, i);
+            if (size == NO_SIZE) {
+                return NO_SIZE;
+            }
+            groupSize = Math.max(groupSize, size);
+        }
+
+        return groupSize;
+    }
+
+    private int getCachedSize(LayoutManager lm, int orientation, int position) {
+        int size = mItemSizeOrientation == orientation ? mItemSizes.get(getSizeKey(position)) : NO_SIZE;
+        if (size == NO_SIZE && mMeasureAhead && lm != null) {
+            size = measureItem(lm, orientation, position);
+        }
+
+        return size;
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when an alignment request has settled,
+     * that is after the last layout pass or correction it caused, or at the end of its smooth
+     * scroll. A callback is dropped when a newer alignment request replaces its request.
+     */
+    public interface AlignmentCallback {
+        /**
+         * @param recyclerView The view.
+         * @param position     The adapter position of the request.
+         * @param view         The view at the position, or null if it is not laid out.
+         * @param error        The distance in pixels the view still is from the requested
+         *                     alignment, positive towards the end. 0 when aligned, or when it
+         *                     cannot be measured.
+         */
+        void onAligned(@NonNull CenteringRecyclerView recyclerView, int position,
+                       @Nullable View view, int error);
+    }
+
+    //
+    //
+    //
+
+    private AlignmentCallback mAlignmentCallback;
+    private int mCallbackPosition;
+    private int mCallbackAlignment;
+
+    // the smooth scroll the callback waits for
+    private CenteringSmoothScroller mCallbackScroller;
+
+    private final Runnable mCallbackChecker = new Runnable() {
+        @Override
+        public void run() {
+            dispatchAlignmentCallback(false);
+        }
+    };
+
+    /**
+     * Sets the callback of the latest request, dropping the callback of an earlier one.
+     */
+    private void setAlignmentCallback(@Nullable AlignmentCallback callback, int position,
+                                      int alignment) {
+        mAlignmentCallback = callback;
+        mCallbackPosition = position;
+        mCallbackAlignment = alignment;
+        mCallbackScroller = null;
+        removeCallbacks(mCallbackChecker);
+        if (mOnAlignmentMetricsListener != null) {
+            startMetrics(position);
+        }
+    }
+
+    /**
+     * Checks on the next frame whether the request has settled, for requests that may not cause
+     * a layout pass at all.
+     */
+    private void postAlignmentCallbackCheck() {
+        if (mAlignmentCallback != null || mMetricsPending) {
+            removeCallbacks(mCallbackChecker);
+            ViewCompat.postOnAnimation(this, mCallbackChecker);
+        }
+    }
+
+    /**
+     * Calls the callback unless something is still going to move the target: a queued request,
+     * a correction, a smooth scroll or a pending layout pass.
+     *
+     * @param afterLayout true when called at the end of a layout pass.
+     */
+    private void dispatchAlignmentCallback(boolean afterLayout) {
+        if ((mAlignmentCallback == null && !mMetricsPending) || mInLayout || mRequestPending
+                || mLayoutRequestPending
+                || mCorrectionPending || mCorrectInLayout || mCallbackScroller != null
+                || (!afterLayout && isLayoutRequested())) {
+            return;
+        }
+
+        AlignmentCallback callback = mAlignmentCallback;
+        mAlignmentCallback = null;
+        boolean metricsPending = mMetricsPending;
+        mMetricsPending = false;
+        removeCallbacks(mCallbackChecker);
+
+        LayoutManager lm = getLayoutManager();
+        View view = lm != null ? lm.findViewByPosition(mCallbackPosition) : null;
+        int error = 0;
+        if (view != null && mAlignmentStrategy != null && mCallbackAlignment >= ALIGN_HEAD) {
+            error = getAlignmentDelta(mAlignmentStrategy.getOrientation(), view, mCallbackAlignment);
+        }
+        if (callback != null) {
+            callback.onAligned(this, getRealPosition(mCallbackPosition), view, error);
+        }
+        if (metricsPending && mOnAlignmentMetricsListener != null) {
+            finishMetrics(error);
+        }
+    }
+
+    /**
+     * Called by CenteringSmoothScroller when it stops, either at the target or interrupted.
+     */
+    void onSmoothScrollerStopped(CenteringSmoothScroller scroller) {
+        if (scroller == mCallbackScroller) {
+            mCallbackScroller = null;
+            // not called from here, the scroller is still being torn down
+            postAlignmentCallbackCheck();
+        }
+    }
+
+    /**
+     * Sets a listener that is told what each alignment request cost once it has settled: the
+     * applied alignment, how far the target was, layout passes, attached children, measureAhead
+     * binds, time to settle, the final pixel error and whether a fallback offset or a correction
+     * was needed. Requests replaced before they settle are not reported. Nothing is tracked
+     * while no listener is set, and the reported {@link AlignmentMetrics} instance is reused, so
+     * it can stay on in production.
+     *
+     * @param listener The listener or null.
+     */
+    public void setOnAlignmentMetricsListener(@Nullable OnAlignmentMetricsListener listener) {
+        mOnAlignmentMetricsListener = listener;
+        if (listener == null) {
+            mMetricsPending = false;
+        }
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when an alignment request has settled,
+     * with what it cost.
+     */
+    public interface OnAlignmentMetricsListener {
+        /**
+         * @param recyclerView The view.
+         * @param metrics      The metrics of the request. The instance is reused for the next
+         *                     request.
+         */
+        void onAlignmentMetrics(@NonNull CenteringRecyclerView recyclerView,
+                                @NonNull AlignmentMetrics metrics);
+    }
+
+    //
+    //
+    //
+
+    private OnAlignmentMetricsListener mOnAlignmentMetricsListener;
+    private final AlignmentMetrics mMetrics = new AlignmentMetrics();
+    private boolean mMetricsPending;
+
+    private void startMetrics(int position) {
+        AlignmentMetrics metrics = mMetrics;
+        metrics.mPosition = getRealPosition(position);
+        metrics.mSmooth = false;
+        metrics.mFallbackOffsetUsed = false;
+        metrics.mCorrected = false;
+        metrics.mLayoutPassCount = mLayoutPassCount;
+        metrics.mAttachedChildCount = mChildAttachCount;
+        metrics.mMeasureBindCount = mMeasureBindCount;
+        metrics.mStartNanos = System.nanoTime();
+
+        int first = findFirstVisiblePosition();
+        int last = findLastVisiblePosition();
+        if (first == NO_POSITION || last == NO_POSITION || position < 0) {
+            metrics.mItemDistance = -1;
+        } else if (position < first) {
+            metrics.mItemDistance = first - position;
+        } else if (position > last) {
+            metrics.mItemDistance = position - last;
+        } else {
+            metrics.mItemDistance = 0;
+        }
+
+        mMetricsPending = true;
+    }
+
+    private void finishMetrics(int error) {
+        AlignmentMetrics metrics = mMetrics;
+        metrics.mAlignment = mCallbackAlignment >= ALIGN_HEAD ? mCallbackAlignment : NO_ALIGNMENT;
+        metrics.mLayoutPassCount = mLayoutPassCount - metrics.mLayoutPassCount;
+        metrics.mAttachedChildCount = mChildAttachCount - metrics.mAttachedChildCount;
+        metrics.mMeasureBindCount = mMeasureBindCount - metrics.mMeasureBindCount;
+        metrics.mDurationNanos = System.nanoTime() - metrics.mStartNanos;
+        metrics.mError = error;
+        mOnAlignmentMetricsListener.onAlignmentMetrics(this, metrics);
+    }
+
+    /**
+     * Makes flings and drags end with an item aligned by the given strategy. The landing item is
+     * projected from the fling velocity and the known item sizes, and the fling velocity is
+     * adjusted so that RecyclerView's own deceleration ends with that item aligned, so there is
+     * no second snap animation. A drag that ends without a fling snaps the closest item.
+     * <p>
+     * Installs an OnFlingListener, so it cannot be combined with a SnapHelper.
+     *
+     * @param strategy (SNAPPING_STRATEGY_HEAD | SNAPPING_STRATEGY_TAIL | SNAPPING_STRATEGY_CENTER
+     *                 | SNAPPING_STRATEGY_NONE), SNAPPING_STRATEGY_NONE turns snapping off.
+     * @throws IllegalStateException if another OnFlingListener is set.
+     */
+    public void setFlingSnapStrategy(int strategy) {
+        switch (strategy) {
+            case SNAPPING_STRATEGY_HEAD:
+                mFlingSnapAlignment = ALIGN_HEAD;
+                break;
+            case SNAPPING_STRATEGY_TAIL:
+                mFlingSnapAlignment = ALIGN_TAIL;
+                break;
+            case SNAPPING_STRATEGY_CENTER:
+                mFlingSnapAlignment = ALIGN_CENTER;
+                break;
+            case SNAPPING_STRATEGY_NONE:
+                mFlingSnapAlignment = NO_ALIGNMENT;
+                mSnapFlingTarget = NO_POSITION;
+                if (getOnFlingListener() == mFlingSnapper) {
+                    setOnFlingListener(null);
+                }
+                return;
+            default:
+                throw new IllegalArgumentException("unknown strategy");
+        }
+
+        OnFlingListener listener = getOnFlingListener();
+        if (listener != null && listener != mFlingSnapper) {
+            throw new IllegalStateException("An instance of OnFlingListener already set.");
+        }
+        setOnFlingListener(mFlingSnapper);
+    }
+
+    //
+    //
+    //
+
+    private int mFlingSnapAlignment = NO_ALIGNMENT;
+
+    // set by a drag, cleared once it has turned into a snapping fling
+    private boolean mSnapOnIdle;
+
+    // same physics as RecyclerView's flinger, also follows the running snapping fling
+    private OverScroller mFlingScroller;
+
+    // the item a running snapping fling lands on
+    private int mSnapFlingTarget = NO_POSITION;
+
+    // set once the fling has been re-aimed at the laid out target
+    private boolean mSnapFlingAimed;
+
+    // lets the widget's own flings pass its OnFlingListener
+    private boolean mSnapFlinging;
+
+    // scroll distance that aligns the last target of findSnapTarget()
+    private int mSnapDistance;
+
+    private Interpolator mSnapRestartInterpolator;
+
+    private final OnFlingListener mFlingSnapper = new OnFlingListener() {
+        @Override
+        public boolean onFling(int velocityX, int velocityY) {
+            return !mSnapFlinging && snapFling(velocityX, velocityY);
+        }
+    };
+
+    private boolean snapFling(int velocityX, int velocityY) {
+        LayoutManager lm = getLayoutManager();
+        if (mFlingSnapAlignment == NO_ALIGNMENT || lm == null || mAlignmentStrategy == null
+                || getChildCount() == 0) {
+            return false;
+        }
+
+        int orientation = mAlignmentStrategy.getOrientation();
+        int distance = getFlingDistance(orientation == OrientationHelper.HORIZONTAL
+                ? velocityX : velocityY);
+        int target = findSnapTarget(lm, orientation, distance);
+        if (target == NO_POSITION) {
+            return false;
+        }
+
+        mSnapOnIdle = false;
+        mSnapFlingTarget = target;
+        mSnapFlingAimed = false;
+        if (!flingBy(orientation, mSnapDistance, false)) {
+            // too short or too long for a fling
+            mSnapFlingTarget = NO_POSITION;
+            startSnapScroll(lm, target);
+        }
+
+        return true;
+    }
+
+    /**
+     * Snaps the closest item once a drag has come to rest without a fling.
+     */
+    private void snapOnIdle() {
+        LayoutManager lm = getLayoutManager();
+        if (mFlingSnapAlignment == NO_ALIGNMENT || lm == null || mAlignmentStrategy == null
+                || getChildCount() == 0) {
+            return;
+        }
+
+        int target = findSnapTarget(lm, mAlignmentStrategy.getOrientation(), 0);
+        if (target != NO_POSITION) {
+            startSnapScroll(lm, target);
+        }
+    }
+
+    private void startSnapScroll(LayoutManager lm, int target) {
+        CenteringSmoothScroller scroller =
+                new CenteringSmoothScroller(this, mFlingSnapAlignment, mSmoothScrollMaxDuration);
+        scroller.setTargetPosition(target);
+        lm.startSmoothScroll(scroller);
+    }
+
+    /**
+     * Re-aims a snapping fling once its target is laid out. The landing point was projected with
+     * estimated sizes; now the exact distance is known, and the rest of the fling is replaced by
+     * one that covers it.
+     */
+    private void aimSnapFling() {
+        LayoutManager lm = getLayoutManager();
+        View target = lm != null ? lm.findViewByPosition(mSnapFlingTarget) : null;
+        if (target == null || mAlignmentStrategy == null) {
+            return;
+        }
+
+        mSnapFlingAimed = true;
+        int orientation = mAlignmentStrategy.getOrientation();
+        int distance = -getAlignmentDelta(orientation, target, mFlingSnapAlignment);
+        if (distance == getSnapFlingRemaining()) {
+            return;
+        }
+        if (!flingBy(orientation, distance, true)) {
+            mSnapFlingTarget = NO_POSITION;
+            super.smoothScrollBy(orientation == OrientationHelper.HORIZONTAL ? distance : 0,
+                    orientation == OrientationHelper.HORIZONTAL ? 0 : distance,
+                    getSnapRestartInterpolator());
+        }
+    }
+
+    /**
+     * Corrects what rounding left of a snapping fling that ran its course. A fling cut short by
+     * the end of the list, stopScroll() or a touch is left alone.
+     */
+    private void finishSnapFling() {
+        int position = mSnapFlingTarget;
+        mSnapFlingTarget = NO_POSITION;
+        if (Math.abs(getSnapFlingRemaining()) > 1) {
+            return;
+        }
+
+        LayoutManager lm = getLayoutManager();
+        View target = lm != null ? lm.findViewByPosition(position) : null;
+        if (target != null && mAlignmentStrategy != null && getAlignmentDelta(
+                mAlignmentStrategy.getOrientation(), target, mFlingSnapAlignment) != 0) {
+            startSnapScroll(lm, position);
+        }
+    }
+
+    /**
+     * Starts a fling whose deceleration covers the given distance.
+     *
+     * @param orientation The layout orientation.
+     * @param distance    The scroll distance, positive towards the end.
+     * @param restart     true to replace a running fling.
+     * @return false if the distance is out of the range of fling velocities.
+     */
+    private boolean flingBy(int orientation, int distance, boolean restart) {
+        int velocity = getVelocityForDistance(distance);
+        if (velocity == 0) {
+            return false;
+        }
+
+        boolean horizontal = orientation == OrientationHelper.HORIZONTAL;
+        mSnapFlinging = true;
+        try {
+            if (restart) {
+                // makes the flinger start over with a new OverScroller, the flywheel of the
+                // running one would add its velocity to the new fling
+                int step = distance > 0 ? 1 : -1;
+                super.smoothScrollBy(horizontal ? step : 0, horizontal ? 0 : step,
+                        getSnapRestartInterpolator());
+            }
+            if (!super.fling(horizontal ? velocity : 0, horizontal ? 0 : velocity)) {
+                return false;
+            }
+        } finally {
+            mSnapFlinging = false;
+        }
+
+        // follows the fling, both scrollers run on the same animation clock
+        getFlingScroller().fling(0, 0, 0, velocity,
+                Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        return true;
+    }
+
+    /**
+     * Returns what is left of the running snapping fling.
+     */
+    private int getSnapFlingRemaining() {
+        OverScroller scroller = getFlingScroller();
+        scroller.computeScrollOffset();
+
+        return scroller.getFinalY() - scroller.getCurrY();
+    }
+
+    /**
+     * Returns the distance a fling at the given velocity covers, as RecyclerView runs it.
+     */
+    private int getFlingDistance(int velocity) {
+        OverScroller scroller = getFlingScroller();
+        // without this the flywheel adds the velocity of an unfinished fling
+        scroller.abortAnimation();
+        scroller.fling(0, 0, 0, velocity,
+                Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        int distance = scroller.getFinalY();
+        scroller.abortAnimation();
+
+        return distance;
+    }
+
+    /**
+     * Returns the slowest fling velocity that covers the given distance. The distance grows with
+     * the velocity, so it is a binary search over the velocities RecyclerView accepts.
+     *
+     * @param distance The scroll distance, positive towards the end.
+     * @return the velocity, or 0 if no fling covers the distance.
+     */
+    private int getVelocityForDistance(int distance) {
+        int absDistance = Math.abs(distance);
+        int low = getMinFlingVelocity();
+        int high = getMaxFlingVelocity();
+        if (absDistance == 0 || getFlingDistance(low) > absDistance
+                || getFlingDistance(high) < absDistance) {
+            return 0;
+        }
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getFlingDistance(mid) < absDistance) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return distance > 0 ? low : -low;
+    }
+
+    private OverScroller getFlingScroller() {
+        if (mFlingScroller == null) {
+            mFlingScroller = new OverScroller(getContext());
+        }
+
+        return mFlingScroller;
+    }
+
+    private Interpolator getSnapRestartInterpolator() {
+        if (mSnapRestartInterpolator == null) {
+            mSnapRestartInterpolator = new DecelerateInterpolator();
+        }
+
+        return mSnapRestartInterpolator;
+    }
+
+    /**
+     * Projects which item ends up aligned after scrolling by the given distance. The walk starts
+     * from the item that is closest to the alignment line now and steps item by item (row by
+     * row for a grid) while that brings the alignment line closer to the projected one. Sizes
+     * come from the size cache; items that have never been laid out count as the average size
+     * of the current children.
+     *
+     * @param lm          The layout manager.
+     * @param orientation The layout orientation.
+     * @param distance    The projected scroll distance, positive towards the end.
+     * @return the adapter position or NO_POSITION. The scroll distance that aligns it is left in
+     * mSnapDistance.
+     */
+    private int findSnapTarget(LayoutManager lm, int orientation, int distance) {
+        int alignment = mFlingSnapAlignment;
+        View reference = findSnapReference(lm, orientation, alignment);
+        if (reference == null) {
+            return NO_POSITION;
+        }
+        int position = getChildAdapterPosition(reference);
+        if (position == NO_POSITION) {
+            return NO_POSITION;
+        }
+
+        int childCount = getChildCount();
+        int totalSize = 0;
+        for (int i = 0; i < childCount; i++) {
+            totalSize += getDecoratedSize(orientation, getChildAt(i));
+        }
+        int averageSize = Math.max(1, totalSize / childCount);
+
+        int itemCount = lm.getItemCount();
+        // what is left to scroll after aligning the reference item
+        int remaining = distance + getAlignmentDelta(orientation, reference, alignment);
+        // step is on screen, positionStep is in the adapter
+        int step = remaining > 0 ? 1 : -1;
+        int positionStep = isLayoutReversed(lm, orientation) ? -step : step;
+        while (true) {
+            int next = mGridStrategy != null
+                    ? mGridStrategy.getPositionInAdjacentSpanGroup(position, positionStep, itemCount)
+                    : position + positionStep;
+            if (next < 0 || next >= itemCount) {
+                break;
+            }
+
+            int size = getEstimatedSize(orientation, position, averageSize);
+            int nextSize = getEstimatedSize(orientation, next, averageSize);
+            int spacing;
+            if (step > 0) {
+                spacing = alignment == ALIGN_HEAD ? size
+                        : alignment == ALIGN_TAIL ? nextSize : (size + nextSize) / 2;
+            } else {
+                spacing = alignment == ALIGN_HEAD ? nextSize
+                        : alignment == ALIGN_TAIL ? size : (size + nextSize) / 2;
+            }
+
+            int nextRemaining = remaining - step * spacing;
+            if (Math.abs(nextRemaining) >= Math.abs(remaining)) {
+                break;
+            }
+            remaining = nextRemaining;
+            position = next;
+        }
+        mSnapDistance = distance - remaining;
+
+        return position;
+    }
+
+    /**
+     * Returns the child that is aligned, or closest to being aligned, right now.
+     */
+    private View findSnapReference(LayoutManager lm, int orientation, int alignment) {
+        if (alignment == ALIGN_CENTER) {
+            int childCount = getChildCount();
+            ensureViewport();
+            int center = orientation == OrientationHelper.HORIZONTAL
+                    ? 2 * mViewportLeft + mViewportWidth
+                    : 2 * mViewportTop + mViewportHeight;
+            int index = lm instanceof LinearLayoutManager
+                    ? findCenterChild(orientation, center, childCount)
+                    : scanCenterChild(orientation, center, childCount);
+            return getChildAt(index);
+        }
+
+        int position = alignment == ALIGN_HEAD
+                ? findFirstVisiblePosition() : findLastVisiblePosition();
+
+        return position != NO_POSITION ? lm.findViewByPosition(position) : null;
+    }
+
+    private int getEstimatedSize(int orientation, int position, int fallback) {
+        int size = orientation == mItemSizeOrientation ? mItemSizes.get(getSizeKey(position)) : NO_SIZE;
+
+        return size != NO_SIZE ? size : fallback;
+    }
+
+    private static final int NO_ALIGNMENT = AlignmentMath.NO_ALIGNMENT;
+
+    // internal request type for snap(int, int)
+    private static final int ALIGN_SNAP = -2;
+
+    // internal request type for ranges, the alignment goes in the strategy
+    private static final int ALIGN_RANGE = -3;
+
+    private boolean mCoalesceRequests;
+    private boolean mRequestPending;
+    private boolean mLayoutRequestPending;
+    private boolean mDispatchingRequest;
+    private int mPendingRequestAlignment;
+    private int mPendingRequestPosition;
+    private int mPendingRequestStrategy;
+    private int mPendingRequestRangeEnd;
+
+    // set when the adapter or layout manager changes, cleared by the next layout pass
+    private boolean mAwaitingLayout;
+
+    // the last alignment that was applied, kept until the user scrolls
+    private int mAlignedPosition = NO_POSITION;
+    private int mAlignedAlignment;
+
+    private final Runnable mRequestDispatcher = new Runnable() {
+        @Override
+        public void run() {
+            if (!mRequestPending) {
+                return;
+            }
+            if (isLayoutPending()) {
+                mRequestPending = false;
+                mLayoutRequestPending = true;
+                return;
+            }
+            runPendingRequest();
+        }
+    };
+
+    /**
+     * Starts an alignment request. Any pending correction is dropped since it belongs to an older
+     * request. A request made before the first layout, or while an adapter or layout manager
+     * swap has not been laid out yet, is kept and applied in the next layout pass. When requests
+     * are coalesced, the request replaces the queued one and is run on the next animation frame.
+     *
+     * @param alignment The alignment, ALIGN_SNAP or ALIGN_RANGE.
+     * @param position  The adapter position.
+     * @param strategy  The snapping strategy for ALIGN_SNAP, the alignment for ALIGN_RANGE.
+     * @param callback  The callback of the request or null.
+     * @return true if the request was queued and must not be run now.
+     */
+    private boolean deferRequest(int alignment, int position, int strategy,
+                                 @Nullable AlignmentCallback callback) {
+        cancelCorrection();
+        stopKeyNavigation();
+
+        if (mDispatchingRequest) {
+            return false;
+        }
+
+        setAlignmentCallback(callback, position, alignment);
+
+        if (isLayoutPending()) {
+            setPendingRequest(alignment, position, strategy);
+            mLayoutRequestPending = true;
+            return true;
+        }
+
+        if (!mCoalesceRequests) {
+            postAlignmentCallbackCheck();
+            return false;
+        }
+
+        setPendingRequest(alignment, position, strategy);
+        if (!mRequestPending) {
+            mRequestPending = true;
+            ViewCompat.postOnAnimation(this, mRequestDispatcher);
+        }
+
+        return true;
+    }
+
+    private void setPendingRequest(int alignment, int position, int strategy) {
+        mPendingRequestAlignment = alignment;
+        mPendingRequestPosition = position;
+        mPendingRequestStrategy = strategy;
+    }
+
+    /**
+     * Tests if alignment has to wait for a layout pass, because nothing has been laid out yet or
+     * the adapter or layout manager has been replaced since the last one.
+     */
+    private boolean isLayoutPending() {
+        return mAwaitingLayout || !ViewCompat.isLaidOut(this) || getLayoutManager() == null;
+    }
+
+    /**
+     * Runs the queued request, whichever of the frame callback or the layout pass gets to it
+     * first.
+     */
+    private void runPendingRequest() {
+        mRequestPending = false;
+        mLayoutRequestPending = false;
+        removeCallbacks(mRequestDispatcher);
+
+        mDispatchingRequest = true;
+        try {
+            int position = mPendingRequestPosition;
+            switch (mPendingRequestAlignment) {
+                case ALIGN_HEAD:
+                    head(position);
+                    break;
+                case ALIGN_TAIL:
+                    tail(position);
+                    break;
+                case ALIGN_CENTER:
+                    center(position);
+                    break;
+                case ALIGN_NEAREST:
+                    nearest(position);
+                    break;
+                case ALIGN_SNAP:
+                    snap(position, mPendingRequestStrategy);
+                    break;
+                case ALIGN_RANGE:
+                    alignRange(position, mPendingRequestRangeEnd, mPendingRequestStrategy, null);
+                    break;
+            }
+        } finally {
+            mDispatchingRequest = false;
+        }
+        postAlignmentCallbackCheck();
+    }
+
+    /**
+     * Remembers an applied alignment so it can be restored after a configuration change.
+     */
+    private void setAlignedPosition(int position, int alignment) {
+        mAlignedPosition = position;
+        mAlignedAlignment = alignment;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        addViewportListeners();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        removeViewportListeners();
+        removeCallbacks(mRequestDispatcher);
+        removeCallbacks(mPrefetcher);
+        mPrefetchAdapter = null;
+        restorePoolLimits();
+        if (mRequestPending) {
+            // keep the request for the layout pass that follows re-attaching
+            mRequestPending = false;
+            mLayoutRequestPending = true;
+        }
+        cancelCorrection();
+        stopKeyNavigation();
+        removeCallbacks(mCallbackChecker);
+    }
+
+    @Override
+    public void onScrollStateChanged(int state) {
+        super.onScrollStateChanged(state);
+
+        if (state == SCROLL_STATE_DRAGGING) {
+            mAlignedPosition = NO_POSITION;
+            stopKeyNavigation();
+            mSnapOnIdle = true;
+            mSnapFlingTarget = NO_POSITION;
+        } else if (state == SCROLL_STATE_IDLE && mSnapOnIdle) {
+            mSnapOnIdle = false;
+            snapOnIdle();
+        } else if (state == SCROLL_STATE_IDLE && mSnapFlingTarget != NO_POSITION) {
+            finishSnapFling();
+        }
+
+        if (mTransformLayerType != View.LAYER_TYPE_NONE) {
+            setChildLayerType(state != SCROLL_STATE_IDLE ? mTransformLayerType : View.LAYER_TYPE_NONE);
+        }
+    }
+
+    @Override
+    public void scrollToPosition(int position) {
+        forgetAlignment();
+        super.scrollToPosition(position);
+    }
+
+    @Override
+    public void smoothScrollToPosition(int position) {
+        forgetAlignment();
+        super.smoothScrollToPosition(position);
+    }
+
+    @Override
+    public void scrollBy(int x, int y) {
+        forgetAlignment();
+        super.scrollBy(x, y);
+    }
+
+    @Override
+    public void smoothScrollBy(int dx, int dy) {
+        forgetAlignment();
+        super.smoothScrollBy(dx, dy);
+    }
+
+    @Override
+    public void smoothScrollBy(int dx, int dy, @Nullable Interpolator interpolator) {
+        forgetAlignment();
+        super.smoothScrollBy(dx, dy, interpolator);
+    }
+
+    @Override
+    public boolean fling(int velocityX, int velocityY) {
+        forgetAlignment();
+        return super.fling(velocityX, velocityY);
+    }
+
+    /**
+     * Forgets the last alignment when the list is scrolled by the app, the layout manager's
+     * accessibility actions or a fling, so that neither a configuration change nor the anchor
+     * lock brings the old item back. The widget's own scrolls bypass this.
+     */
+    private void forgetAlignment() {
+        cancelCorrection();
+        mAlignedPosition = NO_POSITION;
+        mSnapFlingTarget = NO_POSITION;
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        if (mLayoutRequestPending || mRequestPending) {
+            state.mPosition = mPendingRequestPosition;
+            state.mAlignment = mPendingRequestAlignment;
+            state.mStrategy = mPendingRequestStrategy;
+            state.mRangeEnd = mPendingRequestRangeEnd;
+        } else {
+            state.mPosition = mAlignedPosition;
+            state.mAlignment = mAlignedAlignment;
+            state.mStrategy = SNAPPING_STRATEGY_NONE;
+        }
+        state.mSelectedPosition = mSelectedPosition;
+
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        if (mSelectionTrackingEnabled) {
+            // restored holders are bound from scratch, no need to notify
+            mSelectedPosition = ss.mSelectedPosition;
+        }
+        if (ss.mPosition != NO_POSITION) {
+            // applied on top of the restored layout manager state in the first layout pass
+            setPendingRequest(ss.mAlignment, ss.mPosition, ss.mStrategy);
+            mPendingRequestRangeEnd = ss.mRangeEnd;
+            mLayoutRequestPending = true;
+            requestLayout();
+        }
+    }
+
+    /**
+     * Holds the pending or current alignment and the selection across configuration changes.
+     */
+    static class SavedState extends AbsSavedState {
+        int mPosition = NO_POSITION;
+        int mAlignment;
+        int mStrategy;
+        int mRangeEnd;
+        int mSelectedPosition = NO_POSITION;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        SavedState(Parcel in, ClassLoader loader) {
+            super(in, loader);
+
+            mPosition = in.readInt();
+            mAlignment = in.readInt();
+            mStrategy = in.readInt();
+            mRangeEnd = in.readInt();
+            mSelectedPosition = in.readInt();
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            super.writeToParcel(dest, flags);
+
+            dest.writeInt(mPosition);
+            dest.writeInt(mAlignment);
+            dest.writeInt(mStrategy);
+            dest.writeInt(mRangeEnd);
+            dest.writeInt(mSelectedPosition);
+        }
+
+        public static final Creator<SavedState> CREATOR = new ClassLoaderCreator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in, ClassLoader loader) {
+                return new SavedState(in, loader);
+            }
+
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in, null);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    //
+    //
+    //
+
+    private final Correction mCorrection = new Correction();
+    private boolean mCorrectionPending;
+    private boolean mInLayout;
+    private boolean mCorrectInLayout;
+
+    /**
+     * Re-aligns an item once it has been laid out, for when its size was not known up front.
+     */
+    private void postCorrection(int position, int alignment) {
+        mCorrection.mPosition = position;
+        mCorrection.mAlignment = alignment;
+        mMetrics.mCorrected = true;
+        if (mInLayout) {
+            // corrected by a second layout pass before the first frame is drawn
+            mCorrectInLayout = true;
+            return;
+        }
+        mCorrectionPending = true;
+        post(mCorrection);
+    }
+
+    private void cancelCorrection() {
+        mCorrectionPending = false;
+        removeCallbacks(mCorrection);
+    }
+
+    private class Correction implements Runnable {
+        int mPosition;
+        int mAlignment;
+
+        @Override
+        public void run() {
+            mCorrectionPending = false;
+            if (!realign()) {
+                dispatchAlignmentCallback(false);
+            }
+        }
+
+        /**
+         * Scrolls the target again if it has been laid out away from the requested alignment.
+         *
+         * @return true if a scroll was requested.
+         */
+        boolean realign() {
+            LayoutManager lm = getLayoutManager();
+            if (lm == null || mAlignmentStrategy == null) {
+                return false;
+            }
+
+            View child = lm.findViewByPosition(mPosition);
+            int orientation = mAlignmentStrategy.getOrientation();
+            int size = getAlignedSize(lm, orientation, mPosition);
+            if (child == null || size == NO_SIZE) {
+                return false;
+            }
+
+            int offset = mAlignment == ALIGN_TAIL
+                    ? getBottomOffsetForSize(orientation, size)
+                    : getCenterOffsetForSize(orientation, size);
+            if (offset == getChildOffset(orientation, child)) {
+                return false;
+            }
+            mAlignmentStrategy.scrollToPositionWithOffset(mPosition, offset);
+
+            return true;
+        }
+    }
+
+    /**
+     * Returns the alignment snap() applies to the given position.
+     *
+     * @param position The adapter position.
+     * @param strategy The snapping strategy for a tie.
+     * @return ALIGN_HEAD, ALIGN_TAIL, ALIGN_CENTER, ALIGN_NEAREST or NO_ALIGNMENT.
+     */
+    private int getSnapAlignment(int position, int strategy) {
+        return AlignmentMath.getSnapAlignment(position, findFirstVisiblePosition(),
+                findLastVisiblePosition(), strategy);
+    }
+
+    //
+    //
+    //
+
+    private static final int DEFAULT_SMOOTH_SCROLL_JUMP_THRESHOLD = 3;
+
+    private int mSmoothScrollJumpThreshold = DEFAULT_SMOOTH_SCROLL_JUMP_THRESHOLD;
+    private int mSmoothScrollMaxDuration;
+
+    /**
+     * Starts a smooth scroll that ends with the view at the given position aligned. A target
+     * further than the jump threshold is approached by jumping to one screen before it first.
+     *
+     * @param position  The adapter position.
+     * @param alignment (ALIGN_HEAD | ALIGN_TAIL | ALIGN_CENTER | ALIGN_NEAREST)
+     * @param callback  The callback or null.
+     */
+    private void smoothScrollToAlignment(int position, int alignment,
+                                         @Nullable AlignmentCallback callback) {
+        position = toVirtualPosition(position);
+        cancelCorrection();
+        stopKeyNavigation();
+        mAlignedPosition = NO_POSITION;
+        setAlignmentCallback(callback, position, alignment);
+        mMetrics.mSmooth = true;
+
+        LayoutManager lm = getLayoutManager();
+        if (lm == null
+                || (mIgnoreIfCompletelyVisible && isCompletelyVisible(position))
+                || (mIgnoreIfVisible && isVisible(position))) {
+            postAlignmentCallbackCheck();
+            return;
+        }
+
+        int first = findFirstVisiblePosition();
+        int last = findLastVisiblePosition();
+        if (mSmoothScrollJumpThreshold > 0 && first != NO_POSITION && last != NO_POSITION) {
+            int screen = last - first + 1;
+            int threshold = screen * mSmoothScrollJumpThreshold;
+            if (position > last + threshold) {
+                scrollToPosition(position - screen);
+            } else if (position < first - threshold) {
+                scrollToPosition(position + screen);
+            }
+        }
+
+        CenteringSmoothScroller scroller = new CenteringSmoothScroller(this, alignment, mSmoothScrollMaxDuration);
+        scroller.setTargetPosition(position);
+        if (callback != null || mMetricsPending) {
+            mCallbackScroller = scroller;
+        }
+        lm.startSmoothScroll(scroller);
+    }
+
+    /**
+     * Returns the distance the given child has to move to be aligned. Used by smooth scrollers.
+     *
+     * @param orientation The layout orientation.
+     * @param child       The child view.
+     * @param alignment   (ALIGN_HEAD | ALIGN_TAIL | ALIGN_CENTER | ALIGN_NEAREST)
+     * @return the distance in pixels, positive towards the end.
+     */
+    int getAlignmentDelta(int orientation, View child, int alignment) {
+        int offset;
+        switch (alignment) {
+            case ALIGN_NEAREST:
+                return getNearestDelta(orientation, child);
+            case ALIGN_TAIL:
+                offset = getBottomOffset(orientation, child);
+                break;
+            case ALIGN_CENTER:
+                offset = getCenterOffset(orientation, child);
+                break;
+            default:
+                offset = 0;
+                break;
+        }
+
+        return offset - getChildOffset(orientation, child);
+    }
+
+    /**
+     * Returns the shortest distance that makes the given child completely visible. A child larger
+     * than the viewport is moved to its start.
+     */
+    private int getNearestDelta(int orientation, View child) {
+        ensureViewport();
+        int childStart = getChildOffset(orientation, child);
+        int childSize = getDecoratedSize(orientation, child);
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            return AlignmentMath.getNearestDelta(mViewportLeft, mViewportWidth, childStart, childSize);
+        } else {
+            return AlignmentMath.getNearestDelta(mViewportTop, mViewportHeight, childStart, childSize);
+        }
+    }
+
+    /**
+     * Returns the current offset of a child from the padded start edge, in the same space
+     * scrollToPositionWithOffset uses.
+     */
+    private int getChildOffset(int orientation, View child) {
+        LayoutManager lm = getLayoutManager();
+        RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            return lm.getDecoratedLeft(child) - lp.leftMargin - getPaddingLeft();
+        } else {
+            return lm.getDecoratedTop(child) - lp.topMargin - getPaddingTop();
+        }
+    }
+
+    /**
+     * If you want to ignore scrolling when a view at the requested position is completely visible,
+     * set this to true.
+     *
+     * @param ignoreIfCompletelyVisible true | false
+     */
+    public void setIgnoreIfCompletelyVisible(boolean ignoreIfCompletelyVisible) {
+        mIgnoreIfCompletelyVisible = ignoreIfCompletelyVisible;
+    }
+
+
+    /**
+     * If you want to ignore scrolling when a view at the requested position is visible, set this to
+     * true.
+     *
+     * @param ignoreIfVisible true | false
+     */
+    public void setIgnoreIfVisible(boolean ignoreIfVisible) {
+        mIgnoreIfVisible = ignoreIfVisible;
+    }
+
+    /**
+     * If you want {@link #center(int)} and {@link #tail(int)} to measure an off-screen target
+     * before scrolling to it, set this to true. The target view is bound into a recycled holder
+     * and measured up front, so StaggeredGridLayoutManager does not need a corrective second
+     * layout pass.
+     *
+     * @param measureAhead true | false
+     */
+    public void setMeasureAhead(boolean measureAhead) {
+        mMeasureAhead = measureAhead;
+    }
+
+    /**
+     * Tests if a view at the given position is visible or not.
+     *
+     * @param position The adapter position.
+     * @see #isCompletelyVisible(int)
+     */
+    public boolean isVisible(int position) {
+        position = toVirtualPosition(position);
+        int first = findFirstVisiblePosition();
+        int last = findLastVisiblePosition();
+        return first <= position && last >= position;
+    }
+
+    /**
+     * Tests if a view at the given position is completely visible or not.
+     *
+     * @param position The adapter position.
+     * @see #isVisible(int)
+     */
+    public boolean isCompletelyVisible(int position) {
+        position = toVirtualPosition(position);
+        int first = findFirstCompletelyVisiblePosition();
+        int last = findLastCompletelyVisiblePosition();
+        return first <= position && last >= position;
+    }
+
+    /**
+     * Returns the first visible grid position.
+     *
+     * @return the first visible position or RecyclerView.NO_POSITION if any error occurs.
+     * @see #getFirstCompletelyVisiblePosition()
+     */
+    public int getFirstVisiblePosition() {
+        return getRealPosition(findFirstVisiblePosition());
+    }
+
+    private int findFirstVisiblePosition() {
+        if (isVisibleRangeCached(FIRST_VISIBLE)) {
+            return mVisibleRange[FIRST_VISIBLE];
+        }
+
+        if (mAlignmentStrategy == null) {
+            return NO_POSITION;
+        }
+
+        return cacheVisibleRange(FIRST_VISIBLE, mAlignmentStrategy.findFirstVisibleItemPosition());
+    }
+
+    /**
+     * Returns the last visible grid position.
+     *
+     * @return the last visible position or RecyclerView.NO_POSITION if any error occurs.
+     * @see #getLastCompletelyVisiblePosition()
+     */
+    public int getLastVisiblePosition() {
+        return getRealPosition(findLastVisiblePosition());
+    }
+
+    private int findLastVisiblePosition() {
+        if (isVisibleRangeCached(LAST_VISIBLE)) {
+            return mVisibleRange[LAST_VISIBLE];
+        }
+
+        if (mAlignmentStrategy == null) {
+            return NO_POSITION;
+        }
+
+        return cacheVisibleRange(LAST_VISIBLE, mAlignmentStrategy.findLastVisibleItemPosition());
+    }
+
+    /**
+     * Returns the first completely visible grid position.
+     *
+     * @return the first completely visible position or RecyclerView.NO_POSITION if any error occurs.
+     * @see #getFirstVisiblePosition()
+     */
+    public int getFirstCompletelyVisiblePosition() {
+        return getRealPosition(findFirstCompletelyVisiblePosition());
+    }
+
+    private int findFirstCompletelyVisiblePosition() {
+        if (isVisibleRangeCached(FIRST_COMPLETELY_VISIBLE)) {
+            return mVisibleRange[FIRST_COMPLETELY_VISIBLE];
+        }
+
+        if (mAlignmentStrategy == null) {
+            return NO_POSITION;
+        }
+
+        return cacheVisibleRange(FIRST_COMPLETELY_VISIBLE, mAlignmentStrategy.findFirstCompletelyVisibleItemPosition());
+    }
+
+    /**
+     * Returns the last completely visible grid position.
+     *
+     * @return the last completely visible position or RecyclerView.NO_POSITION if any error occurs.
+     * @see #getLastVisiblePosition()
+     */
+    public int getLastCompletelyVisiblePosition() {
+        return getRealPosition(findLastCompletelyVisiblePosition());
+    }
+
+    private int findLastCompletelyVisiblePosition() {
+        if (isVisibleRangeCached(LAST_COMPLETELY_VISIBLE)) {
+            return mVisibleRange[LAST_COMPLETELY_VISIBLE];
+        }
+
+        if (mAlignmentStrategy == null) {
+            return NO_POSITION;
+        }
+
+        return cacheVisibleRange(LAST_COMPLETELY_VISIBLE, mAlignmentStrategy.findLastCompletelyVisibleItemPosition());
+    }
+
+    /**
+     * Fills the given arrays with the adapter positions and visible fractions of all items that
+     * are at least partly visible, in one pass over the children. The fraction is the visible
+     * part of the item's area within the viewport, which excludes the padding when clipToPadding
+     * is set and the part clipped by the parent. Items are reported in child order, which is not
+     * necessarily adapter order. Nothing is allocated, so it can be called on every frame.
+     *
+     * @param positions The array that receives the adapter positions.
+     * @param fractions The array that receives the visible fractions, from 0 (exclusive) to 1.
+     * @return the number of items written, at most the length of the shorter array.
+     */
+    public int getVisibleFractions(@NonNull int[] positions, @NonNull float[] fractions) {
+        int capacity = Math.min(positions.length, fractions.length);
+        int childCount = getChildCount();
+        if (capacity == 0 || childCount == 0) {
+            return 0;
+        }
+
+        ensureViewport();
+        int viewportLeft = getPaddingLeft() + mViewportLeft;
+        int viewportTop = getPaddingTop() + mViewportTop;
+        int viewportRight = viewportLeft + mViewportWidth;
+        int viewportBottom = viewportTop + mViewportHeight;
+
+        int count = 0;
+        for (int i = 0; i < childCount && count < capacity; i++) {
+            View child = getChildAt(i);
+            int width = child.getWidth();
+            int height = child.getHeight();
+            if (width <= 0 || height <= 0) {
+                continue;
+            }
+
+            int left = child.getLeft() + (int) child.getTranslationX();
+            int top = child.getTop() + (int) child.getTranslationY();
+            int visibleWidth = Math.min(left + width, viewportRight) - Math.max(left, viewportLeft);
+            int visibleHeight = Math.min(top + height, viewportBottom) - Math.max(top, viewportTop);
+            if (visibleWidth <= 0 || visibleHeight <= 0) {
+                continue;
+            }
+
+            int position = getChildAdapterPosition(child);
+            if (position == NO_POSITION) {
+                continue;
+            }
+
+            positions[count] = getRealPosition(position);
+            fractions[count] = ((float) visibleWidth / width) * ((float) visibleHeight / height);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Turns on looping mode for adapters that repeat their items over a large virtual item count,
+     * e.g. Integer.MAX_VALUE, and bind {@code position % count}. Alignment methods then take
+     * real positions and scroll to the copy closest to the current position, so a move is never
+     * longer than half the loop, and the visible position getters, listeners and callbacks report
+     * real positions. Item sizes and stable IDs are kept per real item.
+     * <p>
+     * Requests made before the first layout go to the copy in the middle of the virtual range.
+     *
+     * @param count The number of real items or 0 to turn looping off.
+     */
+    public void setLoopingItemCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count < 0");
+        }
+
+        if (count != mLoopingItemCount) {
+            mLoopingItemCount = count;
+            clearItemSizes();
+            mIdIndexValid = false;
+        }
+    }
+
+    /**
+     * Returns the number of real items of a looping adapter.
+     *
+     * @return the count or 0 if looping is off.
+     * @see #setLoopingItemCount(int)
+     */
+    public int getLoopingItemCount() {
+        return mLoopingItemCount;
+    }
+
+    /**
+     * Maps an adapter position to the real item it shows. Meant to be called from
+     * onBindViewHolder() of a looping adapter.
+     *
+     * @param position The adapter position.
+     * @return the real position, which is the adapter position itself if looping is off.
+     * @see #setLoopingItemCount(int)
+     */
+    public int getRealPosition(int position) {
+        if (mLoopingItemCount <= 0) {
+            return position;
+        }
+
+        return AlignmentMath.getRealPosition(position, mLoopingItemCount);
+    }
+
+    //
+    //
+    //
+
+    private int mLoopingItemCount;
+
+    /**
+     * Returns the adapter position of the copy of the given item that is closest to the first
+     * visible item, or to the middle of the list before anything is laid out.
+     */
+    private int toVirtualPosition(int position) {
+        if (mLoopingItemCount <= 0 || position < 0) {
+            return position;
+        }
+
+        Adapter adapter = getAdapter();
+        int itemCount = adapter != null ? adapter.getItemCount() : 0;
+        if (itemCount <= mLoopingItemCount) {
+            return position;
+        }
+
+        int anchor = findFirstVisiblePosition();
+        if (anchor == NO_POSITION) {
+            anchor = mAlignedPosition != NO_POSITION ? mAlignedPosition : itemCount / 2;
+        }
+
+        return AlignmentMath.getNearestCopy(position, anchor, mLoopingItemCount, itemCount);
+    }
+
+    private int getSizeKey(int position) {
+        return getRealPosition(position);
+    }
+
+    /**
+     * Overrides the alignment strategy resolved for the current layout manager. The strategy is
+     * resolved again when another layout manager is set.
+     *
+     * @param strategy The strategy or null to disable alignment.
+     */
+    public void setAlignmentStrategy(@Nullable AlignmentStrategy strategy) {
+        applyAlignmentStrategy(strategy);
+        invalidateVisibleRange();
+        clearItemSizes();
+    }
+
+    /**
+     * Returns the alignment strategy used with the current layout manager.
+     *
+     * @return the strategy or null if the layout manager is not supported.
+     */
+    @Nullable
+    public AlignmentStrategy getAlignmentStrategy() {
+        return mAlignmentStrategy;
+    }
+
+    @Override
+    public void setLayoutManager(LayoutManager layout) {
+        super.setLayoutManager(layout);
+
+        applyAlignmentStrategy(createAlignmentStrategy(layout));
+        mAwaitingLayout = true;
+
+        invalidateVisibleRange();
+        clearItemSizes();
+    }
+
+    @Override
+    public void setAdapter(Adapter adapter) {
+        unregisterAdapterObserver();
+        super.setAdapter(adapter);
+        registerAdapterObserver();
+        restorePoolLimits();
+        mAwaitingLayout = true;
+        mSelectedPosition = NO_POSITION;
+
+        invalidateVisibleRange();
+        clearItemSizes();
+    }
+
+    @Override
+    public void swapAdapter(Adapter adapter, boolean removeAndRecycleExistingViews) {
+        unregisterAdapterObserver();
+        super.swapAdapter(adapter, removeAndRecycleExistingViews);
+        registerAdapterObserver();
+        restorePoolLimits();
+        mAwaitingLayout = true;
+        mSelectedPosition = NO_POSITION;
+
+        invalidateVisibleRange();
+        clearItemSizes();
+    }
+
+    @Override
+    public void onScrolled(int dx, int dy) {
+        super.onScrolled(dx, dy);
+
+        if (mSnapFlingTarget != NO_POSITION && !mSnapFlingAimed
+                && getScrollState() == SCROLL_STATE_SETTLING) {
+            aimSnapFling();
+        }
+        invalidateVisibleRange();
+        updateCenterItem();
+        transformChildren();
+    }
+
+    @Override
+    public void onChildAttachedToWindow(@NonNull View child) {
+        super.onChildAttachedToWindow(child);
+
+        mChildAttachCount++;
+        invalidateVisibleRange();
+        if (mTransformLayerType != View.LAYER_TYPE_NONE && getScrollState() != SCROLL_STATE_IDLE) {
+            child.setLayerType(mTransformLayerType, null);
+        }
+    }
+
+    @Override
+    public void onChildDetachedFromWindow(@NonNull View child) {
+        super.onChildDetachedFromWindow(child);
+
+        invalidateVisibleRange();
+        recordItemSize(child);
+        if (mTransformLayerType != View.LAYER_TYPE_NONE
+                && child.getLayerType() != View.LAYER_TYPE_NONE) {
+            // pooled views should not hold on to their layers
+            child.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        mInLayout = true;
+        try {
+            if (mLayoutRequestPending && mAlignmentStrategy != null && getAdapter() != null) {
+                // sets the scroll target before the pass below lays it out
+                mAwaitingLayout = false;
+                runPendingRequest();
+            }
+            super.onLayout(changed, l, t, r, b);
+            mLayoutPassCount++;
+
+            if (mCorrectInLayout) {
+                mCorrectInLayout = false;
+                if (mCorrection.realign()) {
+                    super.onLayout(changed, l, t, r, b);
+                    mLayoutPassCount++;
+                }
+            }
+        } finally {
+            mInLayout = false;
+        }
+        if (getAdapter() != null && getLayoutManager() != null) {
+            mAwaitingLayout = false;
+        }
+
+        invalidateVisibleRange();
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            recordItemSize(getChildAt(i));
+        }
+        updateCenterItem();
+        transformChildren();
+        restorePoolLimitsAfterJump();
+        dispatchAlignmentCallback(true);
+    }
+
+    //
+    //
+    //
+
+    // plain counters so tests and metrics can tell what an alignment request cost
+    private int mLayoutPassCount;
+    private int mChildAttachCount;
+    private int mMeasureBindCount;
+
+    /**
+     * Returns the number of layout passes run since the last reset, including the extra pass of
+     * a correction made within layout.
+     */
+    @VisibleForTesting
+    int getLayoutPassCount() {
+        return mLayoutPassCount;
+    }
+
+    /**
+     * Returns the number of children attached since the last reset. Every bind during layout
+     * attaches a child, so this is an upper bound of the binds done by the layout manager;
+     * children re-attached from the scrap or the view cache are counted without being bound.
+     */
+    @VisibleForTesting
+    int getChildAttachCount() {
+        return mChildAttachCount;
+    }
+
+    /**
+     * Returns the number of items bound by measureAhead since the last reset.
+     */
+    @VisibleForTesting
+    int getMeasureBindCount() {
+        return mMeasureBindCount;
+    }
+
+    @VisibleForTesting
+    void resetCounters() {
+        mLayoutPassCount = 0;
+        mChildAttachCount = 0;
+        mMeasureBindCount = 0;
+    }
+
+    //
+    //
+    //
+
+    private static final int FIRST_VISIBLE = 0;
+    private static final int LAST_VISIBLE = 1;
+    private static final int FIRST_COMPLETELY_VISIBLE = 2;
+    private static final int LAST_COMPLETELY_VISIBLE = 3;
+
+    // visible range snapshot, valid until the next scroll or layout
+    private final int[] mVisibleRange = new int[4];
+    private int mVisibleRangeFlags;
+
+    private AlignmentStrategy mAlignmentStrategy;
+    // same as mAlignmentStrategy for grids, which align whole span groups
+    private GridAlignmentStrategy mGridStrategy;
+
+    private void applyAlignmentStrategy(AlignmentStrategy strategy) {
+        mAlignmentStrategy = strategy;
+        mGridStrategy = strategy instanceof GridAlignmentStrategy ? (GridAlignmentStrategy) strategy : null;
+    }
+
+    /**
+     * Returns the built-in strategy for the given layout manager.
+     *
+     * @return the strategy or null if the layout manager is not supported.
+     */
+    private static AlignmentStrategy createAlignmentStrategy(LayoutManager lm) {
+        if (lm instanceof AlignmentStrategy) {
+            return (AlignmentStrategy) lm;
+        } else if (lm instanceof GridLayoutManager) {
+            return new GridAlignmentStrategy((GridLayoutManager) lm);
+        } else if (lm instanceof LinearLayoutManager) {
+            return new LinearAlignmentStrategy((LinearLayoutManager) lm);
+        } else if (lm instanceof StaggeredGridLayoutManager) {
+            return new StaggeredGridAlignmentStrategy((StaggeredGridLayoutManager) lm);
+        }
+
+        return null;
+    }
+
+    private AlignmentStrategy requireAlignmentStrategy() {
+        if (mAlignmentStrategy == null) {
+            throw new UnsupportedOperationException("unsupported layout manager");
+        }
+
+        return mAlignmentStrategy;
+    }
+
+    private boolean isVisibleRangeCached(int index) {
+        return (mVisibleRangeFlags & (1 << index)) != 0;
+    }
+
+    private int cacheVisibleRange(int index, int position) {
+        mVisibleRange[index] = position;
+        mVisibleRangeFlags |= 1 << index;
+
+        return position;
+    }
+
+    /**
+     * Drops the visible range snapshot. Called whenever children may have moved.
+     */
+    private void invalidateVisibleRange() {
+        mVisibleRangeFlags = 0;
+    }
+
+    //
+    //
+    //
+
+    private int mFallbackCenterOffset;
+
+    /**
+     * Calculates and returns the center offset size.
+     *
+     * @param orientation The layout orientation.
+     * @param child       The child to center.
+     * @return the center offset or the last known offset if the child is null.
+     */
+    private int getCenterOffset(int orientation, View child) {
+        if (child == null) {
+            mMetrics.mFallbackOffsetUsed = true;
+            return mFallbackCenterOffset;
+        }
+
+        return getCenterOffsetForSize(orientation, getDecoratedSize(orientation, child));
+    }
+
+    /**
+     * Calculates and returns the center offset size for an item of the given size.
+     *
+     * @param orientation The layout orientation.
+     * @param size        The decorated item size along the layout orientation.
+     * @return the center offset.
+     */
+    private int getCenterOffsetForSize(int orientation, int size) {
+        ensureViewport();
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            mFallbackCenterOffset = AlignmentMath.getCenterOffset(mViewportLeft, mViewportWidth, size);
+        } else {
+            mFallbackCenterOffset = AlignmentMath.getCenterOffset(mViewportTop, mViewportHeight, size);
+        }
+
+        return mFallbackCenterOffset;
+    }
+
+    private int mFallbackBottomOffset;
+
+    /**
+     * Calculates and returns the bottom offset size.
+     *
+     * @param orientation The layout orientation.
+     * @param child       The child to align.
+     * @return the bottom offset or the last known offset if the child is null.
+     */
+    private int getBottomOffset(int orientation, View child) {
+        if (child == null) {
+            mMetrics.mFallbackOffsetUsed = true;
+            return mFallbackBottomOffset;
+        }
+
+        return getBottomOffsetForSize(orientation, getDecoratedSize(orientation, child));
+    }
+
+    /**
+     * Calculates and returns the bottom offset size for an item of the given size.
+     *
+     * @param orientation The layout orientation.
+     * @param size        The decorated item size along the layout orientation.
+     * @return the bottom offset.
+     */
+    private int getBottomOffsetForSize(int orientation, int size) {
+        ensureViewport();
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            mFallbackBottomOffset = AlignmentMath.getBottomOffset(mViewportLeft, mViewportWidth, size);
+        } else {
+            mFallbackBottomOffset = AlignmentMath.getBottomOffset(mViewportTop, mViewportHeight, size);
+        }
+
+        return mFallbackBottomOffset;
+    }
+
+    /**
+     * Returns the size of a child along the layout orientation, including item decorations and
+     * margins, the same extent the layout manager applies scroll offsets to.
+     *
+     * @param orientation The layout orientation.
+     * @param child       The child view.
+     * @return the decorated size.
+     */
+    private int getDecoratedSize(int orientation, View child) {
+        LayoutManager lm = getLayoutManager();
+        if (lm == null || !(child.getLayoutParams() instanceof RecyclerView.LayoutParams)) {
+            return orientation == OrientationHelper.HORIZONTAL ? child.getWidth() : child.getHeight();
+        }
+
+        RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            return lm.getDecoratedMeasuredWidth(child) + lp.leftMargin + lp.rightMargin;
+        } else {
+            return lm.getDecoratedMeasuredHeight(child) + lp.topMargin + lp.bottomMargin;
+        }
+    }
+
+    //
+    //
+    //
+
+    // visible content area, relative to the padded start edge that scroll offsets are based on
+    private int mViewportLeft;
+    private int mViewportTop;
+    private int mViewportWidth;
+    private int mViewportHeight;
+    private boolean mViewportValid;
+
+    private final Rect mTmpRect = new Rect();
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+
+        invalidateViewport();
+
+        // items are measured against the cross axis, e.g. wrapped text gets taller in a narrower list
+        int orientation = mAlignmentStrategy != null
+                ? mAlignmentStrategy.getOrientation() : mItemSizeOrientation;
+        if (orientation == OrientationHelper.HORIZONTAL ? h != oldh : w != oldw) {
+            clearItemSizes();
+        }
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+
+        invalidateViewport();
+    }
+
+    @Override
+    public void setPaddingRelative(int start, int top, int end, int bottom) {
+        super.setPaddingRelative(start, top, end, bottom);
+
+        invalidateViewport();
+    }
+
+    @Override
+    public void setClipToPadding(boolean clipToPadding) {
+        super.setClipToPadding(clipToPadding);
+
+        invalidateViewport();
+    }
+
+    private void invalidateViewport() {
+        mViewportValid = false;
+    }
+
+    // ancestors scrolling or laying out can change how much of this view they clip
+    private final ViewTreeObserver.OnScrollChangedListener mViewportScrollListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    invalidateViewport();
+                }
+            };
+
+    private final ViewTreeObserver.OnGlobalLayoutListener mViewportLayoutListener =
+            new ViewTreeObserver.OnGlobalLayoutListener() {
+                @Override
+                public void onGlobalLayout() {
+                    invalidateViewport();
+                }
+            };
+
+    private void addViewportListeners() {
+        ViewTreeObserver observer = getViewTreeObserver();
+        observer.addOnScrollChangedListener(mViewportScrollListener);
+        observer.addOnGlobalLayoutListener(mViewportLayoutListener);
+        invalidateViewport();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void removeViewportListeners() {
+        ViewTreeObserver observer = getViewTreeObserver();
+        observer.removeOnScrollChangedListener(mViewportScrollListener);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            observer.removeOnGlobalLayoutListener(mViewportLayoutListener);
+        } else {
+            observer.removeGlobalOnLayoutListener(mViewportLayoutListener);
+        }
+    }
+
+    /**
+     * Computes the visible content area if it is not cached. The area is the padded content box
+     * (or the whole view if clipToPadding is off), intersected with what the ancestors leave
+     * visible, e.g. a NestedScrollView that holds the list in a taller layout. The cache is
+     * dropped on size and padding changes, and by the view tree observer whenever anything in
+     * the window scrolls or is laid out, so the ancestors are only walked once per change.
+     */
+    private void ensureViewport() {
+        if (mViewportValid) {
+            return;
+        }
+
+        int paddingLeft = getPaddingLeft();
+        int paddingTop = getPaddingTop();
+        int left = 0;
+        int top = 0;
+        int right = getWidth();
+        int bottom = getHeight();
+        if (getClipToPadding()) {
+            left = paddingLeft;
+            top = paddingTop;
+            right -= getPaddingRight();
+            bottom -= getPaddingBottom();
+        }
+
+        // a view clipped out of sight keeps its whole area, there is nothing to align against
+        if (getAncestorClip(mTmpRect) && !mTmpRect.isEmpty()) {
+            left = Math.max(left, mTmpRect.left);
+            top = Math.max(top, mTmpRect.top);
+            right = Math.min(right, mTmpRect.right);
+            bottom = Math.min(bottom, mTmpRect.bottom);
+        }
+
+        mViewportLeft = left - paddingLeft;
+        mViewportTop = top - paddingTop;
+        mViewportWidth = Math.max(0, right - left);
+        mViewportHeight = Math.max(0, bottom - top);
+        mViewportValid = true;
+    }
+
+    /**
+     * Computes the part of this view that its ancestors leave visible, in its own coordinates.
+     * The bounds are carried up the parent chain with plain integer offsets. An ancestor clips to
+     * its padding if clipToPadding is set, and not at all if clipChildren is off.
+     *
+     * @param rect Receives the visible part.
+     * @return true if any ancestor cuts off part of this view.
+     */
+    private boolean getAncestorClip(Rect rect) {
+        rect.set(0, 0, getWidth(), getHeight());
+        boolean clipped = false;
+        // position of this view in the frame of the current ancestor
+        int offsetX = 0;
+        int offsetY = 0;
+        View view = this;
+        ViewParent parent = getParent();
+        while (parent instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) parent;
+            offsetX += view.getLeft() - group.getScrollX() + (int) view.getTranslationX();
+            offsetY += view.getTop() - group.getScrollY() + (int) view.getTranslationY();
+            if (getClipChildren(group)) {
+                int left = 0;
+                int top = 0;
+                int right = group.getWidth();
+                int bottom = group.getHeight();
+                if (getClipToPadding(group)) {
+                    left = group.getPaddingLeft();
+                    top = group.getPaddingTop();
+                    right -= group.getPaddingRight();
+                    bottom -= group.getPaddingBottom();
+                }
+                left -= offsetX;
+                top -= offsetY;
+                right -= offsetX;
+                bottom -= offsetY;
+                if (left > rect.left || top > rect.top || right < rect.right || bottom < rect.bottom) {
+                    clipped = true;
+                    rect.set(Math.max(left, rect.left), Math.max(top, rect.top),
+                            Math.min(right, rect.right), Math.min(bottom, rect.bottom));
+                }
+            }
+            view = group;
+            parent = group.getParent();
+        }
+
+        return clipped;
+    }
+
+    private static boolean getClipChildren(ViewGroup group) {
+        // defaults to true, only readable from API 18
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2 || group.getClipChildren();
+    }
+
+    private static boolean getClipToPadding(ViewGroup group) {
+        // defaults to true, only readable from API 21
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || group.getClipToPadding();
+    }
+
+    //
+    //
+    //
+
+    private static final int NO_SIZE = -1;
+
+    private final ItemSizeCache mItemSizes = new ItemSizeCache();
+    private int mItemSizeOrientation;
+
+    /**
+     * Returns the size that has to fit for the item at the given position to be aligned: the
+     * item itself, or the whole row (column) that contains it in a grid.
+     *
+     * @param lm          The layout manager.
+     * @param orientation The layout orientation.
+     * @param position    The adapter position.
+     * @return the size or NO_SIZE if it is not known.
+     */
+    private int getAlignedSize(LayoutManager lm, int orientation, int position) {
+        if (mGridStrategy == null || lm == null) {
+            return getTargetSize(lm, orientation, position);
+        }
+
+        int start = mGridStrategy.getSpanGroupStart(position);
+        int end = mGridStrategy.getSpanGroupEnd(position, lm.getItemCount());
+        int groupSize = NO_SIZE;
+        for (int i = start; i <= end; i++) {
+            int size = getTargetSize(lm, orientation, i);
+            if (size == NO_SIZE) {
+                return NO_SIZE;
+            }
+            groupSize = Math.max(groupSize, size);
+        }
+
+        return groupSize;
+    }
+
+    /**
+     * Returns the size of the item at the given position along the layout orientation, without
+     * waiting for it to be laid out.
+     *
+     * @param lm          The layout manager.
+     * @param orientation The layout orientation.
+     * @param position    The adapter position.
+     * @return the item size or NO_SIZE if it is not known.
+     */
+    private int getTargetSize(LayoutManager lm, int orientation, int position) {
+        if (lm == null) {
+            return NO_SIZE;
+        }
+
+        View child = lm.findViewByPosition(position);
+        if (child != null) {
+            return getDecoratedSize(orientation, child);
+        }
+
+        if (orientation == mItemSizeOrientation) {
+            int size = mItemSizes.get(getSizeKey(position));
+            if (size != ItemSizeCache.UNKNOWN) {
+                return size;
             }
+        }
+
+        if (mMeasureAhead) {
+            return measureItem(lm, orientation, position);
+        }
+
+        return NO_SIZE;
+    }
+
+    /**
+     * Remembers the size of a laid out child so the item can be aligned exactly once it has
+     * scrolled out of view.
+     *
+     * @param child The child view.
+     */
+    private void recordItemSize(View child) {
+        int position = getChildAdapterPosition(child);
+        if (position == NO_POSITION) {
+            return;
+        }
+
+        if (mAlignmentStrategy == null) {
+            return;
+        }
+
+        int orientation = mAlignmentStrategy.getOrientation();
+
+        if (orientation != mItemSizeOrientation) {
+            mItemSizes.clear();
+            mItemSizeOrientation = orientation;
+        }
+        mItemSizes.put(getSizeKey(position), getDecoratedSize(orientation, child));
+    }
+
+    /**
+     * Forgets every cached item size.
+     */
+    private void clearItemSizes() {
+        // setLayoutManager() may be called by the super constructor before fields are initialized
+        if (mItemSizes != null) {
+            mItemSizes.clear();
+        }
+    }
+
+    /**
+     * Binds a recycled (or new) holder for the given position and measures it the same way the
+     * layout manager would. The holder is passed to Adapter.onViewRecycled() and returned to the
+     * pool afterwards.
+     *
+     * @param lm          The layout manager.
+     * @param orientation The layout orientation.
+     * @param position    The adapter position.
+     * @return the measured item size or NO_SIZE if the item cannot be measured.
+     */
+    @SuppressWarnings("unchecked")
+    private int measureItem(LayoutManager lm, int orientation, int position) {
+        Adapter adapter = getAdapter();
+        if (adapter == null || position < 0 || position >= adapter.getItemCount()
+                || getWidth() == 0 || getHeight() == 0) {
+            return NO_SIZE;
+        }
+
+        int viewType = adapter.getItemViewType(position);
+        RecycledViewPool pool = getRecycledViewPool();
+        ViewHolder holder = pool.getRecycledView(viewType);
+        if (holder == null) {
+            holder = adapter.createViewHolder(this, viewType);
+        }
+        adapter.bindViewHolder(holder, position);
+        mMeasureBindCount++;
+
+        View view = holder.itemView;
+        ViewGroup.LayoutParams lp = view.getLayoutParams();
+        if (lp == null) {
+            lp = lm.generateDefaultLayoutParams();
+        }
+        int width = lp.width;
+        int height = lp.height;
+        int horizontalMargins = 0;
+        int verticalMargins = 0;
+        if (lp instanceof MarginLayoutParams) {
+            MarginLayoutParams mlp = (MarginLayoutParams) lp;
+            horizontalMargins = mlp.leftMargin + mlp.rightMargin;
+            verticalMargins = mlp.topMargin + mlp.bottomMargin;
+        }
+
+        // item decorations are assumed to match the ones of an attached child
+        int horizontalInsets = 0;
+        int verticalInsets = 0;
+        View sample = getChildAt(0);
+        if (sample != null) {
+            horizontalInsets = lm.getDecoratedMeasuredWidth(sample) - sample.getMeasuredWidth();
+            verticalInsets = lm.getDecoratedMeasuredHeight(sample) - sample.getMeasuredHeight();
+        }
+
+        int size;
+        if (orientation == OrientationHelper.HORIZONTAL) {
+            int crossSpace = getCrossAxisSpace(lm, lp, position, getHeight() - getPaddingTop() - getPaddingBottom());
+            view.measure(
+                    LayoutManager.getChildMeasureSpec(lm.getWidth(), lm.getWidthMode(),
+                            getPaddingLeft() + getPaddingRight() + horizontalMargins + horizontalInsets,
+                            width, true),
+                    LayoutManager.getChildMeasureSpec(crossSpace, MeasureSpec.EXACTLY,
+                            verticalMargins + verticalInsets, height, false));
+            size = view.getMeasuredWidth() + horizontalInsets + horizontalMargins;
         } else {
-            if (orientation == OrientationHelper.HORIZONTAL) {
-                mFallbackBottomOffset = getWidth() - child.getWidth();
+            int crossSpace = getCrossAxisSpace(lm, lp, position, getWidth() - getPaddingLeft() - getPaddingRight());
+            view.measure(
+                    LayoutManager.getChildMeasureSpec(crossSpace, MeasureSpec.EXACTLY,
+                            horizontalMargins + horizontalInsets, width, false),
+                    LayoutManager.getChildMeasureSpec(lm.getHeight(), lm.getHeightMode(),
+                            getPaddingTop() + getPaddingBottom() + verticalMargins + verticalInsets,
+                            height, true));
+            size = view.getMeasuredHeight() + verticalInsets + verticalMargins;
+        }
+
+        // released the same way the Recycler releases a holder, so work started in bind stops
+        adapter.onViewRecycled(holder);
+        pool.putRecycledView(holder);
+
+        return size;
+    }
+
+    /**
+     * Returns the space a single item gets across the layout orientation.
+     */
+    private int getCrossAxisSpace(LayoutManager lm, ViewGroup.LayoutParams lp, int position, int totalSpace) {
+        if (mGridStrategy != null) {
+            return mGridStrategy.getCrossAxisSpace(position, totalSpace);
+        } else if (lm instanceof StaggeredGridLayoutManager) {
+            if (lp instanceof StaggeredGridLayoutManager.LayoutParams
+                    && ((StaggeredGridLayoutManager.LayoutParams) lp).isFullSpan()) {
+                return totalSpace;
+            }
+            return totalSpace / ((StaggeredGridLayoutManager) lm).getSpanCount();
+        }
+
+        return totalSpace;
+    }
+
+    //
+    //
+    //
+
+    private final AdapterObserver mAdapterObserver = new AdapterObserver();
+    private Adapter mObservedAdapter;
+
+    private final StableIdIndex mIdIndex = new StableIdIndex();
+    private boolean mIdIndexValid;
+
+    private void registerAdapterObserver() {
+        mIdIndexValid = false;
+        mObservedAdapter = getAdapter();
+        if (mObservedAdapter != null) {
+            mObservedAdapter.registerAdapterDataObserver(mAdapterObserver);
+        }
+    }
+
+    private void unregisterAdapterObserver() {
+        if (mObservedAdapter != null) {
+            mObservedAdapter.unregisterAdapterDataObserver(mAdapterObserver);
+            mObservedAdapter = null;
+        }
+    }
+
+    /**
+     * Returns where a position ends up after items were inserted.
+     */
+    private static int getPositionAfterInsert(int position, int positionStart, int itemCount) {
+        return position >= positionStart ? position + itemCount : position;
+    }
+
+    /**
+     * Returns where a position ends up after items were removed.
+     *
+     * @return the new position or NO_POSITION if the item at the position was removed.
+     */
+    private static int getPositionAfterRemove(int position, int positionStart, int itemCount) {
+        if (position >= positionStart + itemCount) {
+            return position - itemCount;
+        } else if (position >= positionStart) {
+            return NO_POSITION;
+        }
+
+        return position;
+    }
+
+    /**
+     * Returns where a position ends up after a single item was moved.
+     */
+    private static int getPositionAfterMove(int position, int fromPosition, int toPosition) {
+        if (position == fromPosition) {
+            return toPosition;
+        } else if (fromPosition < position && position <= toPosition) {
+            return position - 1;
+        } else if (toPosition <= position && position < fromPosition) {
+            return position + 1;
+        }
+
+        return position;
+    }
+
+    /**
+     * Keeps position-indexed state in sync with the adapter.
+     */
+    private class AdapterObserver extends AdapterDataObserver {
+        @Override
+        public void onChanged() {
+            mItemSizes.clear();
+            mIdIndexValid = false;
+            int itemCount = mObservedAdapter.getItemCount();
+            if (mSelectedPosition >= itemCount) {
+                mSelectedPosition = NO_POSITION;
+            }
+            if (mAlignedPosition >= itemCount) {
+                mAlignedPosition = NO_POSITION;
+            }
+            applyAnchorLock();
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            if (payload == PAYLOAD_SELECTION) {
+                // neither the size nor the ID of a selection rebind changes
+                return;
+            }
+            onItemRangeChanged(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            if (mLoopingItemCount > 0) {
+                forgetLoopingItems();
             } else {
-                mFallbackBottomOffset = getHeight() - child.getHeight();
+                mItemSizes.invalidate(positionStart, itemCount);
+                if (mIdIndexValid) {
+                    updateIds(positionStart, itemCount);
+                }
+            }
+            if (mAlignedPosition >= positionStart && mAlignedPosition < positionStart + itemCount) {
+                // the anchor may change size
+                applyAnchorLock();
             }
         }
 
-        return mFallbackBottomOffset;
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mSelectedPosition = getPositionAfterInsert(mSelectedPosition, positionStart, itemCount);
+            mAlignedPosition = getPositionAfterInsert(mAlignedPosition, positionStart, itemCount);
+            if (mLoopingItemCount > 0) {
+                forgetLoopingItems();
+            } else {
+                mItemSizes.insert(positionStart, itemCount);
+                if (mIdIndexValid) {
+                    mIdIndex.insert(positionStart, itemCount);
+                    updateIds(positionStart, itemCount);
+                }
+            }
+            applyAnchorLock();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mSelectedPosition = getPositionAfterRemove(mSelectedPosition, positionStart, itemCount);
+            mAlignedPosition = getPositionAfterRemove(mAlignedPosition, positionStart, itemCount);
+            if (mLoopingItemCount > 0) {
+                forgetLoopingItems();
+            } else {
+                mItemSizes.remove(positionStart, itemCount);
+                if (mIdIndexValid) {
+                    mIdIndex.remove(positionStart, itemCount);
+                }
+            }
+            applyAnchorLock();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            // RecyclerView only supports moving a single item
+            mSelectedPosition = getPositionAfterMove(mSelectedPosition, fromPosition, toPosition);
+            mAlignedPosition = getPositionAfterMove(mAlignedPosition, fromPosition, toPosition);
+            if (mLoopingItemCount > 0) {
+                forgetLoopingItems();
+            } else {
+                mItemSizes.move(fromPosition, toPosition);
+                if (mIdIndexValid) {
+                    mIdIndex.move(fromPosition, toPosition);
+                }
+            }
+            applyAnchorLock();
+        }
+
+        /**
+         * Virtual positions do not tell which real items changed, so drops everything that is
+         * keyed by real position.
+         */
+        private void forgetLoopingItems() {
+            mItemSizes.clear();
+            mIdIndexValid = false;
+        }
+
+        private void updateIds(int positionStart, int itemCount) {
+            int end = Math.min(positionStart + itemCount, mObservedAdapter.getItemCount());
+            for (int i = positionStart; i < end; i++) {
+                mIdIndex.setId(i, mObservedAdapter.getItemId(i));
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearSmoothScroller;
+import androidx.recyclerview.widget.OrientationHelper;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * A LinearSmoothScroller that stops with the target aligned the same way
+ * {@link CenteringRecyclerView#head(int)}, {@link CenteringRecyclerView#tail(int)} and
+ * {@link CenteringRecyclerView#center(int)} align it.
+ *
+ * @author Shigehiro Soejima
+ */
+class CenteringSmoothScroller extends LinearSmoothScroller {
+    private final CenteringRecyclerView mRecyclerView;
+    private final int mAlignment;
+    private final int mMaxDuration;
+
+    /**
+     * @param recyclerView The view to scroll.
+     * @param alignment    (ALIGN_HEAD | ALIGN_TAIL | ALIGN_CENTER | ALIGN_NEAREST)
+     * @param maxDuration  The duration cap in milliseconds. 0 or less means no cap.
+     */
+    CenteringSmoothScroller(CenteringRecyclerView recyclerView, int alignment, int maxDuration) {
+        super(recyclerView.getContext());
+
+        mRecyclerView = recyclerView;
+        mAlignment = alignment;
+        mMaxDuration = maxDuration;
+    }
+
+    @Override
+    public int calculateDxToMakeVisible(View view, int snapPreference) {
+        RecyclerView.LayoutManager lm = getLayoutManager();
+        if (lm == null || !lm.canScrollHorizontally()) {
+            return 0;
+        }
+
+        return mRecyclerView.getAlignmentDelta(OrientationHelper.HORIZONTAL, view, mAlignment);
+    }
+
+    @Override
+    public int calculateDyToMakeVisible(View view, int snapPreference) {
+        RecyclerView.LayoutManager lm = getLayoutManager();
+        if (lm == null || !lm.canScrollVertically()) {
+            return 0;
+        }
+
+        return mRecyclerView.getAlignmentDelta(OrientationHelper.VERTICAL, view, mAlignment);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        mRecyclerView.onSmoothScrollerStopped(this);
+    }
+
+    @Override
+    protected int calculateTimeForScrolling(int dx) {
+        int time = super.calculateTimeForScrolling(dx);
+
+        return mMaxDuration > 0 ? Math.min(time, mMaxDuration) : time;
+    }
+
+    @Override
+    protected int calculateTimeForDeceleration(int dx) {
+        int time = super.calculateTimeForDeceleration(dx);
+
+        return mMaxDuration > 0 ? Math.min(time, mMaxDuration) : time;
+    }
+}
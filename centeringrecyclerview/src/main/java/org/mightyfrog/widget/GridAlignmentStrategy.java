@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * AlignmentStrategy for GridLayoutManager. Items are aligned by the row (vertical layout) or
+ * column (horizontal layout) they belong to, since that is what GridLayoutManager anchors scroll
+ * offsets to.
+ * <p>
+ * The span index and span group index caches of the SpanSizeLookup are enabled, so finding the
+ * row of a position does not scan the adapter from position 0.
+ *
+ * @author Shigehiro Soejima
+ */
+public class GridAlignmentStrategy extends LinearAlignmentStrategy {
+    private final GridLayoutManager mLayoutManager;
+
+    private GridLayoutManager.SpanSizeLookup mSpanSizeLookup;
+
+    public GridAlignmentStrategy(@NonNull GridLayoutManager layoutManager) {
+        super(layoutManager);
+
+        mLayoutManager = layoutManager;
+    }
+
+    /**
+     * Returns the first position of the row (column) that contains the given position.
+     *
+     * @param position The adapter position.
+     * @return the first adapter position of the span group.
+     */
+    public int getSpanGroupStart(int position) {
+        GridLayoutManager.SpanSizeLookup lookup = obtainSpanSizeLookup();
+        int spanCount = mLayoutManager.getSpanCount();
+        int group = lookup.getSpanGroupIndex(position, spanCount);
+        int start = position;
+        while (start > 0 && lookup.getSpanGroupIndex(start - 1, spanCount) == group) {
+            start--;
+        }
+
+        return start;
+    }
+
+    /**
+     * Returns the last position of the row (column) that contains the given position.
+     *
+     * @param position  The adapter position.
+     * @param itemCount The adapter item count.
+     * @return the last adapter position of the span group.
+     */
+    public int getSpanGroupEnd(int position, int itemCount) {
+        GridLayoutManager.SpanSizeLookup lookup = obtainSpanSizeLookup();
+        int spanCount = mLayoutManager.getSpanCount();
+        int group = lookup.getSpanGroupIndex(position, spanCount);
+        int end = position;
+        while (end < itemCount - 1 && lookup.getSpanGroupIndex(end + 1, spanCount) == group) {
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * Returns the position in the next or previous row (column) that is in the same span as the
+     * given position, or the closest one before it.
+     *
+     * @param position  The adapter position.
+     * @param direction 1 for the next span group, -1 for the previous one.
+     * @param itemCount The adapter item count.
+     * @return the adapter position or RecyclerView.NO_POSITION if there is no such span group.
+     */
+    public int getPositionInAdjacentSpanGroup(int position, int direction, int itemCount) {
+        int start;
+        int end;
+        if (direction > 0) {
+            start = getSpanGroupEnd(position, itemCount) + 1;
+            if (start >= itemCount) {
+                return RecyclerView.NO_POSITION;
+            }
+            end = getSpanGroupEnd(start, itemCount);
+        } else {
+            end = getSpanGroupStart(position) - 1;
+            if (end < 0) {
+                return RecyclerView.NO_POSITION;
+            }
+            start = getSpanGroupStart(end);
+        }
+
+        GridLayoutManager.SpanSizeLookup lookup = obtainSpanSizeLookup();
+        int spanCount = mLayoutManager.getSpanCount();
+        int spanIndex = lookup.getSpanIndex(position, spanCount);
+        int target = start;
+        for (int i = start + 1; i <= end && lookup.getSpanIndex(i, spanCount) <= spanIndex; i++) {
+            target = i;
+        }
+
+        return target;
+    }
+
+    /**
+     * Returns the share of the cross axis the item at the given position gets.
+     *
+     * @param position   The adapter position.
+     * @param totalSpace The space across the layout orientation.
+     * @return the space in pixels.
+     */
+    public int getCrossAxisSpace(int position, int totalSpace) {
+        int spanCount = mLayoutManager.getSpanCount();
+
+        return totalSpace * obtainSpanSizeLookup().getSpanSize(position) / spanCount;
+    }
+
+    /**
+     * Returns the current SpanSizeLookup with its index caches enabled.
+     */
+    private GridLayoutManager.SpanSizeLookup obtainSpanSizeLookup() {
+        GridLayoutManager.SpanSizeLookup lookup = mLayoutManager.getSpanSizeLookup();
+        if (lookup != mSpanSizeLookup) {
+            lookup.setSpanIndexCacheEnabled(true);
+            lookup.setSpanGroupIndexCacheEnabled(true);
+            mSpanSizeLookup = lookup;
+        }
+
+        return lookup;
+    }
+}
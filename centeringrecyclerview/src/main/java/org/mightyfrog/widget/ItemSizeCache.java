@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import java.util.Arrays;
+
+/**
+ * Measured item sizes along the layout orientation, keyed by adapter position.
+ * <p>
+ * Sizes are kept in two parallel int arrays sorted by position, like SparseIntArray, so only
+ * positions that have been laid out take memory and an adapter may report any item count, up to
+ * the Integer.MAX_VALUE of a fake endless list. A lookup is a binary search. Adapter insertions,
+ * removals and moves only shift the keys after the first affected position.
+ *
+ * @author Shigehiro Soejima
+ */
+final class ItemSizeCache {
+    static final int UNKNOWN = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // some VMs reserve header words in an array
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private int[] mPositions = new int[0];
+    private int[] mSizes = new int[0];
+    private int mSize;
+
+    /**
+     * Returns the cached size.
+     *
+     * @param position The adapter position.
+     * @return the size or UNKNOWN.
+     */
+    int get(int position) {
+        int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+
+        return index >= 0 ? mSizes[index] : UNKNOWN;
+    }
+
+    /**
+     * Stores the size of the item at the given position.
+     *
+     * @param position The adapter position.
+     * @param size     The item size.
+     */
+    void put(int position, int size) {
+        if (position < 0) {
+            return;
+        }
+
+        int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+        if (index >= 0) {
+            mSizes[index] = size;
+            return;
+        }
+
+        index = ~index;
+        ensureCapacity(mSize + 1);
+        System.arraycopy(mPositions, index, mPositions, index + 1, mSize - index);
+        System.arraycopy(mSizes, index, mSizes, index + 1, mSize - index);
+        mPositions[index] = position;
+        mSizes[index] = size;
+        mSize++;
+    }
+
+    /**
+     * Forgets every size.
+     */
+    void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Forgets the sizes of the given range.
+     *
+     * @param positionStart The first adapter position.
+     * @param itemCount     The number of items.
+     */
+    void invalidate(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+
+        int start = indexOf(positionStart);
+        int end = indexOf(end(positionStart, itemCount));
+        delete(start, end);
+    }
+
+    /**
+     * Shifts the sizes after the given position to make room for inserted items. Sizes shifted
+     * past Integer.MAX_VALUE are dropped.
+     *
+     * @param positionStart The first inserted adapter position.
+     * @param itemCount     The number of inserted items.
+     */
+    void insert(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+
+        int start = indexOf(positionStart);
+        // positions from here on would not fit in an int
+        int end = indexOf(Integer.MAX_VALUE - itemCount);
+        for (int i = start; i < end; i++) {
+            mPositions[i] += itemCount;
+        }
+        mSize = end;
+    }
+
+    /**
+     * Shifts the sizes after the given range over the removed items.
+     *
+     * @param positionStart The first removed adapter position.
+     * @param itemCount     The number of removed items.
+     */
+    void remove(int positionStart, int itemCount) {
+        if (itemCount <= 0) {
+            return;
+        }
+
+        int start = indexOf(positionStart);
+        int end = indexOf(end(positionStart, itemCount));
+        delete(start, end);
+        for (int i = start; i < mSize; i++) {
+            mPositions[i] -= itemCount;
+        }
+    }
+
+    /**
+     * Moves a single size. Only the sizes between the two positions are shifted.
+     *
+     * @param fromPosition The previous adapter position.
+     * @param toPosition   The new adapter position.
+     */
+    void move(int fromPosition, int toPosition) {
+        if (fromPosition < 0 || toPosition < 0 || fromPosition == toPosition) {
+            return;
+        }
+
+        int size = get(fromPosition);
+        invalidate(fromPosition, 1);
+        if (fromPosition < toPosition) {
+            // (from, to] moves back by one
+            int start = indexOf(fromPosition + 1);
+            int end = indexOf(end(toPosition, 1));
+            for (int i = start; i < end; i++) {
+                mPositions[i]--;
+            }
+        } else {
+            // [to, from) moves up by one
+            int start = indexOf(toPosition);
+            int end = indexOf(fromPosition);
+            for (int i = start; i < end; i++) {
+                mPositions[i]++;
+            }
+        }
+        if (size != UNKNOWN) {
+            put(toPosition, size);
+        }
+    }
+
+    /**
+     * Returns the index of the first key not smaller than the given position.
+     */
+    private int indexOf(int position) {
+        int index = Arrays.binarySearch(mPositions, 0, mSize, position);
+
+        return index >= 0 ? index : ~index;
+    }
+
+    /**
+     * Returns the end of a range, clamped to Integer.MAX_VALUE.
+     */
+    private static int end(int positionStart, int itemCount) {
+        return (int) Math.min((long) positionStart + itemCount, Integer.MAX_VALUE);
+    }
+
+    private void delete(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+
+        System.arraycopy(mPositions, end, mPositions, start, mSize - end);
+        System.arraycopy(mSizes, end, mSizes, start, mSize - end);
+        mSize -= end - start;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mPositions.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(INITIAL_CAPACITY, mPositions.length);
+        while (newCapacity < capacity) {
+            newCapacity = newCapacity > MAX_CAPACITY / 2 ? MAX_CAPACITY : newCapacity * 2;
+        }
+        mPositions = Arrays.copyOf(mPositions, newCapacity);
+        mSizes = Arrays.copyOf(mSizes, newCapacity);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+
+/**
+ * AlignmentStrategy for LinearLayoutManager.
+ *
+ * @author Shigehiro Soejima
+ */
+public class LinearAlignmentStrategy implements AlignmentStrategy {
+    private final LinearLayoutManager mLayoutManager;
+
+    public LinearAlignmentStrategy(@NonNull LinearLayoutManager layoutManager) {
+        mLayoutManager = layoutManager;
+    }
+
+    @Override
+    public int getOrientation() {
+        return mLayoutManager.getOrientation();
+    }
+
+    @Override
+    public int findFirstVisibleItemPosition() {
+        return mLayoutManager.findFirstVisibleItemPosition();
+    }
+
+    @Override
+    public int findLastVisibleItemPosition() {
+        return mLayoutManager.findLastVisibleItemPosition();
+    }
+
+    @Override
+    public int findFirstCompletelyVisibleItemPosition() {
+        return mLayoutManager.findFirstCompletelyVisibleItemPosition();
+    }
+
+    @Override
+    public int findLastCompletelyVisibleItemPosition() {
+        return mLayoutManager.findLastCompletelyVisibleItemPosition();
+    }
+
+    @Override
+    public void scrollToPositionWithOffset(int position, int offset) {
+        mLayoutManager.scrollToPositionWithOffset(position, offset);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import java.util.Arrays;
+
+/**
+ * Maps stable item IDs to adapter positions.
+ * <p>
+ * IDs are kept in a position-indexed long array, and an open-addressing hash table of positions
+ * keyed by those IDs answers lookups. Structural changes only re-key the positions they shift:
+ * inserting or removing a range re-keys the items after it, and moving an item re-keys the items
+ * between its old and new positions. The adapter never has to be queried again.
+ *
+ * @author Shigehiro Soejima
+ */
+final class StableIdIndex {
+    static final long NO_ID = -1;
+    static final int NO_POSITION = -1;
+
+    private static final int MIN_TABLE_CAPACITY = 16;
+    private static final int MAX_TABLE_CAPACITY = 1 << 30;
+
+    // some VMs reserve header words in an array
+    private static final int MAX_ID_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private long[] mIds = new long[0];
+    private int mCount;
+
+    // position + 1 of each entry, 0 for an empty slot
+    private int[] mTable = new int[MIN_TABLE_CAPACITY];
+    private int mMask = MIN_TABLE_CAPACITY - 1;
+    private int mSize;
+
+    /**
+     * Clears the index and sizes it for the given number of items, all without an ID.
+     *
+     * @param itemCount The adapter item count.
+     */
+    void reset(int itemCount) {
+        ensureIdCapacity(itemCount);
+        Arrays.fill(mIds, 0, itemCount, NO_ID);
+        mCount = itemCount;
+
+        int capacity = MIN_TABLE_CAPACITY;
+        while (capacity < (long) itemCount * 2 && capacity < MAX_TABLE_CAPACITY) {
+            capacity <<= 1;
+        }
+        if (mTable.length != capacity) {
+            mTable = new int[capacity];
+            mMask = capacity - 1;
+        } else {
+            Arrays.fill(mTable, 0);
+        }
+        mSize = 0;
+    }
+
+    /**
+     * Returns the number of positions.
+     */
+    int getItemCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the position of the item with the given ID.
+     *
+     * @param id The stable ID.
+     * @return the adapter position or NO_POSITION.
+     */
+    int getPosition(long id) {
+        if (id == NO_ID) {
+            return NO_POSITION;
+        }
+
+        for (int i = slot(id); mTable[i] != 0; i = (i + 1) & mMask) {
+            int position = mTable[i] - 1;
+            if (mIds[position] == id) {
+                return position;
+            }
+        }
+
+        return NO_POSITION;
+    }
+
+    /**
+     * Returns the ID at the given position.
+     *
+     * @param position The adapter position.
+     * @return the stable ID or NO_ID.
+     */
+    long getId(int position) {
+        if (position < 0 || position >= mCount) {
+            return NO_ID;
+        }
+
+        return mIds[position];
+    }
+
+    /**
+     * Sets the ID of the item at the given position.
+     *
+     * @param position The adapter position.
+     * @param id       The stable ID or NO_ID.
+     */
+    void setId(int position, long id) {
+        if (position < 0 || position >= mCount) {
+            return;
+        }
+
+        removeEntry(position);
+        mIds[position] = NO_ID;
+        if (id != NO_ID) {
+            if (mSize + 1 > mTable.length / 2 && mTable.length < MAX_TABLE_CAPACITY) {
+                rehash(mTable.length * 2);
+            }
+            mIds[position] = id;
+            addEntry(position);
+        }
+    }
+
+    /**
+     * Makes room for inserted items. The new positions have no ID until
+     * {@link #setId(int, long)} is called.
+     *
+     * @param positionStart The first inserted adapter position.
+     * @param itemCount     The number of inserted items.
+     */
+    void insert(int positionStart, int itemCount) {
+        if (positionStart < 0 || positionStart > mCount || itemCount <= 0) {
+            return;
+        }
+
+        shiftEntries(positionStart, mCount, itemCount);
+
+        ensureIdCapacity(mCount + itemCount);
+        System.arraycopy(mIds, positionStart, mIds, positionStart + itemCount, mCount - positionStart);
+        Arrays.fill(mIds, positionStart, positionStart + itemCount, NO_ID);
+        mCount += itemCount;
+    }
+
+    /**
+     * Drops removed items and shifts the ones after them.
+     *
+     * @param positionStart The first removed adapter position.
+     * @param itemCount     The number of removed items.
+     */
+    void remove(int positionStart, int itemCount) {
+        if (positionStart < 0 || positionStart >= mCount || itemCount <= 0) {
+            return;
+        }
+
+        int end = Math.min(positionStart + itemCount, mCount);
+        for (int position = positionStart; position < end; position++) {
+            removeEntry(position);
+        }
+
+        int removed = end - positionStart;
+        shiftEntries(end, mCount, -removed);
+
+        System.arraycopy(mIds, end, mIds, positionStart, mCount - end);
+        mCount -= removed;
+    }
+
+    /**
+     * Moves a single item. Only the items between the two positions are re-keyed and shifted.
+     *
+     * @param fromPosition The previous adapter position.
+     * @param toPosition   The new adapter position.
+     */
+    void move(int fromPosition, int toPosition) {
+        if (fromPosition < 0 || fromPosition >= mCount || toPosition < 0 || toPosition >= mCount
+                || fromPosition == toPosition) {
+            return;
+        }
+
+        long id = mIds[fromPosition];
+        removeEntry(fromPosition);
+        if (fromPosition < toPosition) {
+            shiftEntries(fromPosition + 1, toPosition + 1, -1);
+            System.arraycopy(mIds, fromPosition + 1, mIds, fromPosition, toPosition - fromPosition);
+        } else {
+            shiftEntries(toPosition, fromPosition, 1);
+            System.arraycopy(mIds, toPosition, mIds, toPosition + 1, fromPosition - toPosition);
+        }
+        mIds[toPosition] = id;
+        if (id != NO_ID) {
+            addEntry(toPosition);
+        }
+    }
+
+    private int slot(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+
+        return (int) (hash ^ (hash >>> 32)) & mMask;
+    }
+
+    private void addEntry(int position) {
+        int i = slot(mIds[position]);
+        while (mTable[i] != 0) {
+            i = (i + 1) & mMask;
+        }
+        mTable[i] = position + 1;
+        mSize++;
+    }
+
+    /**
+     * Removes the table entry of the given position, keeping linear probe chains intact by
+     * moving later entries back into the hole.
+     */
+    private void removeEntry(int position) {
+        long id = mIds[position];
+        if (id == NO_ID) {
+            return;
+        }
+
+        int hole = slot(id);
+        while (mTable[hole] != position + 1) {
+            if (mTable[hole] == 0) {
+                return;
+            }
+            hole = (hole + 1) & mMask;
+        }
+
+        for (int i = (hole + 1) & mMask; mTable[i] != 0; i = (i + 1) & mMask) {
+            int home = slot(mIds[mTable[i] - 1]);
+            if (((i - home) & mMask) >= ((i - hole) & mMask)) {
+                mTable[hole] = mTable[i];
+                hole = i;
+            }
+        }
+        mTable[hole] = 0;
+        mSize--;
+    }
+
+    /**
+     * Adds delta to the positions of the entries in [start, end), before mIds is shifted. A short
+     * range is re-keyed entry by entry. A probe is a cache miss that costs about as much as
+     * scanning 64 slots, so a long range is re-keyed with a single pass over the table instead.
+     */
+    private void shiftEntries(int start, int end, int delta) {
+        if (start >= end) {
+            return;
+        }
+
+        if ((long) (end - start) * 64 > mTable.length) {
+            for (int i = 0; i < mTable.length; i++) {
+                int value = mTable[i];
+                // branch-free, the range test is a coin toss for random positions
+                int inRange = ((start - value) & (value - end - 1)) >>> 31;
+                mTable[i] = value + (delta & -inRange);
+            }
+            return;
+        }
+
+        // in the direction of the shift, so a shifted entry never matches one still to be found
+        if (delta > 0) {
+            for (int position = end - 1; position >= start; position--) {
+                shiftEntry(position, delta);
+            }
+        } else {
+            for (int position = start; position < end; position++) {
+                shiftEntry(position, delta);
+            }
+        }
+    }
+
+    private void shiftEntry(int position, int delta) {
+        long id = mIds[position];
+        if (id == NO_ID) {
+            return;
+        }
+
+        for (int i = slot(id); mTable[i] != 0; i = (i + 1) & mMask) {
+            if (mTable[i] == position + 1) {
+                mTable[i] += delta;
+                return;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        mTable = new int[capacity];
+        mMask = capacity - 1;
+        mSize = 0;
+        for (int position = 0; position < mCount; position++) {
+            if (mIds[position] != NO_ID) {
+                addEntry(position);
+            }
+        }
+    }
+
+    private void ensureIdCapacity(int capacity) {
+        if (capacity > mIds.length) {
+            int newCapacity = mIds.length > MAX_ID_CAPACITY / 2 ? MAX_ID_CAPACITY : mIds.length * 2;
+            mIds = Arrays.copyOf(mIds, Math.max(capacity, newCapacity));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.StaggeredGridLayoutManager;
+
+/**
+ * AlignmentStrategy for StaggeredGridLayoutManager. The per-span positions are read into a
+ * buffer that is reused while the span count stays the same, and reduced with a linear scan.
+ *
+ * @author Shigehiro Soejima
+ */
+public class StaggeredGridAlignmentStrategy implements AlignmentStrategy {
+    private final StaggeredGridLayoutManager mLayoutManager;
+
+    private int[] mSpanPositions;
+
+    public StaggeredGridAlignmentStrategy(@NonNull StaggeredGridLayoutManager layoutManager) {
+        mLayoutManager = layoutManager;
+    }
+
+    @Override
+    public int getOrientation() {
+        return mLayoutManager.getOrientation();
+    }
+
+    @Override
+    public int findFirstVisibleItemPosition() {
+        return AlignmentMath.minPosition(
+                mLayoutManager.findFirstVisibleItemPositions(obtainSpanPositions()));
+    }
+
+    @Override
+    public int findLastVisibleItemPosition() {
+        return AlignmentMath.maxPosition(
+                mLayoutManager.findLastVisibleItemPositions(obtainSpanPositions()));
+    }
+
+    @Override
+    public int findFirstCompletelyVisibleItemPosition() {
+        return AlignmentMath.minPosition(
+                mLayoutManager.findFirstCompletelyVisibleItemPositions(obtainSpanPositions()));
+    }
+
+    @Override
+    public int findLastCompletelyVisibleItemPosition() {
+        return AlignmentMath.maxPosition(
+                mLayoutManager.findLastCompletelyVisibleItemPositions(obtainSpanPositions()));
+    }
+
+    @Override
+    public void scrollToPositionWithOffset(int position, int offset) {
+        mLayoutManager.scrollToPositionWithOffset(position, offset);
+    }
+
+    /**
+     * Returns a buffer sized to the span count of the layout manager.
+     *
+     * @return the buffer, reused while the span count does not change.
+     */
+    private int[] obtainSpanPositions() {
+        int spanCount = mLayoutManager.getSpanCount();
+        if (mSpanPositions == null || mSpanPositions.length != spanCount) {
+            mSpanPositions = new int[spanCount];
+        }
+
+        return mSpanPositions;
+    }
+}
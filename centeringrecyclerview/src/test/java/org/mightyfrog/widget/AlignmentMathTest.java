@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Shigehiro Soejima
+ */
+public class AlignmentMathTest {
+    private static final int LOOP_COUNT = 10;
+    private static final int ITEM_COUNT = 2000;
+
+    @Test
+    public void nearestCopyStaysInTheSameLoop() {
+        assertEquals(1003, AlignmentMath.getNearestCopy(3, 1000, LOOP_COUNT, ITEM_COUNT));
+        assertEquals(1000, AlignmentMath.getNearestCopy(0, 1000, LOOP_COUNT, ITEM_COUNT));
+        assertEquals(1003, AlignmentMath.getNearestCopy(1993, 1000, LOOP_COUNT, ITEM_COUNT));
+    }
+
+    @Test
+    public void nearestCopyCrossesTheLoopBoundary() {
+        assertEquals(999, AlignmentMath.getNearestCopy(9, 1000, LOOP_COUNT, ITEM_COUNT));
+        assertEquals(1011, AlignmentMath.getNearestCopy(1, 1009, LOOP_COUNT, ITEM_COUNT));
+    }
+
+    @Test
+    public void nearestCopyNeverTakesMoreThanHalfALoop() {
+        for (int anchor = 500; anchor < 520; anchor++) {
+            for (int position = 0; position < LOOP_COUNT; position++) {
+                int copy = AlignmentMath.getNearestCopy(position, anchor, LOOP_COUNT, ITEM_COUNT);
+                assertEquals(position, copy % LOOP_COUNT);
+                assertTrue(Math.abs(copy - anchor) <= LOOP_COUNT / 2);
+            }
+        }
+    }
+
+    @Test
+    public void nearestCopyBreaksTheHalfLoopTieTowardsTheEnd() {
+        assertEquals(1005, AlignmentMath.getNearestCopy(5, 1000, LOOP_COUNT, ITEM_COUNT));
+    }
+
+    @Test
+    public void nearestCopyIsClampedToTheVirtualRange() {
+        assertEquals(9, AlignmentMath.getNearestCopy(9, 0, LOOP_COUNT, ITEM_COUNT));
+        assertEquals(1991, AlignmentMath.getNearestCopy(1, 1999, LOOP_COUNT, ITEM_COUNT));
+    }
+
+    @Test
+    public void nearestCopyOfNoPosition() {
+        assertEquals(AlignmentMath.NO_POSITION,
+                AlignmentMath.getNearestCopy(-1, 1000, LOOP_COUNT, ITEM_COUNT));
+        assertEquals(AlignmentMath.NO_POSITION,
+                AlignmentMath.getNearestCopy(3, 1000, LOOP_COUNT, 0));
+    }
+
+    @Test
+    public void realPosition() {
+        assertEquals(3, AlignmentMath.getRealPosition(1003, LOOP_COUNT));
+        assertEquals(0, AlignmentMath.getRealPosition(0, LOOP_COUNT));
+        assertEquals(AlignmentMath.NO_POSITION, AlignmentMath.getRealPosition(-1, LOOP_COUNT));
+    }
+
+    @Test
+    public void offsets() {
+        assertEquals(360, AlignmentMath.getCenterOffset(10, 800, 100));
+        assertEquals(710, AlignmentMath.getBottomOffset(10, 800, 100));
+    }
+
+    @Test
+    public void nearestDelta() {
+        // completely visible
+        assertEquals(0, AlignmentMath.getNearestDelta(0, 800, 100, 100));
+        // cut off at the start and the end
+        assertEquals(50, AlignmentMath.getNearestDelta(0, 800, -50, 100));
+        assertEquals(-50, AlignmentMath.getNearestDelta(0, 800, 750, 100));
+        // larger than the viewport
+        assertEquals(-100, AlignmentMath.getNearestDelta(0, 800, 100, 1000));
+    }
+
+    @Test
+    public void snapAlignment() {
+        assertEquals(AlignmentMath.ALIGN_HEAD, AlignmentMath.getSnapAlignment(2, 10, 20,
+                AlignmentMath.SNAPPING_STRATEGY_TAIL));
+        assertEquals(AlignmentMath.ALIGN_TAIL, AlignmentMath.getSnapAlignment(30, 10, 20,
+                AlignmentMath.SNAPPING_STRATEGY_HEAD));
+        assertEquals(AlignmentMath.ALIGN_CENTER, AlignmentMath.getSnapAlignment(15, 10, 20,
+                AlignmentMath.SNAPPING_STRATEGY_CENTER));
+        assertEquals(AlignmentMath.NO_ALIGNMENT, AlignmentMath.getSnapAlignment(15, 10, 20,
+                AlignmentMath.SNAPPING_STRATEGY_NONE));
+        assertEquals(AlignmentMath.ALIGN_NEAREST, AlignmentMath.getSnapAlignment(2, 10, 20,
+                AlignmentMath.SNAPPING_STRATEGY_NEAREST));
+    }
+
+    @Test
+    public void minAndMaxPositionIgnoreEmptySpans() {
+        int[] positions = {AlignmentMath.NO_POSITION, 7, 3, AlignmentMath.NO_POSITION};
+        assertEquals(3, AlignmentMath.minPosition(positions));
+        assertEquals(7, AlignmentMath.maxPosition(positions));
+
+        int[] empty = {AlignmentMath.NO_POSITION, AlignmentMath.NO_POSITION};
+        assertEquals(AlignmentMath.NO_POSITION, AlignmentMath.minPosition(empty));
+        assertEquals(AlignmentMath.NO_POSITION, AlignmentMath.maxPosition(empty));
+    }
+}
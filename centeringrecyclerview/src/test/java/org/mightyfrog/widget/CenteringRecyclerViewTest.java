@@ -0,0 +1,624 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.StaggeredGridLayoutManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs every alignment request on each supported layout manager in both orientations, with fixed
+ * and variable item sizes and with a cold or warm item size cache, and checks what it cost: the
+ * exact layout passes and binds, and the pixel error left once the list has settled. The expected
+ * counts are worked out from the item sizes: a request attaches every line (item, or row of a
+ * grid) that overlaps the viewport, and a guessed size adds the lines of the first pass.
+ *
+ * @author Shigehiro Soejima
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28, qualifiers = "w600dp-h1000dp-mdpi")
+public class CenteringRecyclerViewTest {
+    private static final String LINEAR = "linear";
+    private static final String GRID = "grid";
+    private static final String STAGGERED = "staggered";
+
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 800;
+    private static final int SPAN_COUNT = 3;
+    private static final int ITEM_COUNT = 300;
+    private static final int TARGET = 150;
+    // far enough from TARGET that neither is laid out while the other is aligned
+    private static final int OTHER_TARGET = 240;
+
+    private static final int ITEM_SIZE = 100;
+    private static final int MIN_ITEM_SIZE = 60;
+    private static final int ITEM_SIZE_RANGE = 120;
+
+    // layout passes and posted runnables given to a request to settle
+    private static final int FRAMES = 4;
+
+    // Robolectric allocates now and then while it fills its caches, so allocations are checked
+    // as the least of a few rounds after a warm-up; what allocates on every call still shows up
+    private static final int ROUNDS = 3;
+    private static final int READS = 200;
+
+    private static final String[] REQUESTS = {"head", "tail", "center", "snap", "setSelection"};
+
+    @ParameterizedRobolectricTestRunner.Parameters(
+            name = "{0}, orientation {1}, variable sizes {2}, warm cache {3}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (String layout : new String[]{LINEAR, GRID, STAGGERED}) {
+            for (int orientation : new int[]{RecyclerView.VERTICAL, RecyclerView.HORIZONTAL}) {
+                for (boolean variableSizes : new boolean[]{false, true}) {
+                    parameters.add(new Object[]{layout, orientation, variableSizes, false});
+                    parameters.add(new Object[]{layout, orientation, variableSizes, true});
+                }
+            }
+        }
+
+        return parameters;
+    }
+
+    private final String mLayout;
+    private final int mOrientation;
+    private final boolean mVariableSizes;
+    private final boolean mWarm;
+
+    private TestRecyclerView mView;
+    private TestAdapter mAdapter;
+
+    private final boolean[] mAttached = new boolean[ITEM_COUNT];
+    private int mAttachedCount;
+
+    public CenteringRecyclerViewTest(String layout, int orientation, boolean variableSizes,
+                                     boolean warm) {
+        mLayout = layout;
+        mOrientation = orientation;
+        mVariableSizes = variableSizes;
+        mWarm = warm;
+    }
+
+    @Before
+    public void setUp() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        // posted runnables wait for settle() like they wait for the traversal on a device
+        ShadowLooper.pauseMainLooper();
+
+        mView = new TestRecyclerView(activity);
+        mView.setLayoutManager(createLayoutManager(activity));
+        // every attached child is bound once and nothing else is, so binds can be counted exactly
+        mView.setItemViewCacheSize(0);
+        mView.setItemAnimator(null);
+        mAdapter = new TestAdapter();
+        mView.setAdapter(mAdapter);
+        mView.addOnChildAttachStateChangeListener(new RecyclerView.OnChildAttachStateChangeListener() {
+            @Override
+            public void onChildViewAttachedToWindow(@NonNull View view) {
+                int position = mView.getChildAdapterPosition(view);
+                if (position != RecyclerView.NO_POSITION && !mAttached[position]) {
+                    mAttached[position] = true;
+                    mAttachedCount++;
+                }
+            }
+
+            @Override
+            public void onChildViewDetachedFromWindow(@NonNull View view) {
+            }
+        });
+
+        FrameLayout host = new LayoutHost(activity);
+        host.addView(mView, new FrameLayout.LayoutParams(WIDTH, HEIGHT));
+        activity.setContentView(host, new ViewGroup.LayoutParams(WIDTH, HEIGHT));
+        settle();
+
+        if (mWarm) {
+            // lays the targets out once, so their sizes are cached when they are requested
+            mView.scrollToPosition(TARGET);
+            settle();
+            mView.scrollToPosition(0);
+            settle();
+        }
+    }
+
+    @Test
+    public void head() {
+        startRequest();
+        mView.head(TARGET);
+        settle();
+
+        assertRequest(TARGET, CenteringRecyclerView.ALIGN_HEAD, false);
+    }
+
+    @Test
+    public void tail() {
+        startRequest();
+        mView.tail(TARGET);
+        settle();
+
+        assertRequest(TARGET, CenteringRecyclerView.ALIGN_TAIL, false);
+    }
+
+    @Test
+    public void center() {
+        startRequest();
+        mView.center(TARGET);
+        settle();
+
+        assertRequest(TARGET, CenteringRecyclerView.ALIGN_CENTER, false);
+    }
+
+    @Test
+    public void snap() {
+        // after the visible range
+        startRequest();
+        mView.snap(TARGET, CenteringRecyclerView.SNAPPING_STRATEGY_CENTER);
+        settle();
+
+        assertRequest(TARGET, CenteringRecyclerView.ALIGN_TAIL, false);
+
+        // before the visible range
+        int position = mView.getFirstVisiblePosition() - TARGET / 2;
+        startRequest();
+        mView.snap(position, CenteringRecyclerView.SNAPPING_STRATEGY_CENTER);
+        settle();
+
+        assertRequest(position, CenteringRecyclerView.ALIGN_HEAD, false);
+    }
+
+    @Test
+    public void setSelection() {
+        mView.setSelectionTrackingEnabled(true);
+
+        startRequest();
+        mView.setSelection(TARGET, CenteringRecyclerView.ALIGN_CENTER);
+        settle();
+
+        assertEquals(TARGET, mView.getSelectedPosition());
+        assertTrue(mView.isSelected(TARGET));
+        assertRequest(TARGET, CenteringRecyclerView.ALIGN_CENTER, false);
+    }
+
+    @Test
+    public void measureAhead() {
+        mView.setMeasureAhead(true);
+
+        startRequest();
+        mView.center(TARGET);
+        settle();
+
+        assertRequest(TARGET, CenteringRecyclerView.ALIGN_CENTER, true);
+    }
+
+    @Test
+    public void requestsDoNotAllocate() {
+        ThreadMXBean allocations = getAllocationBean();
+        long overhead = getOverhead(allocations);
+        int[] positions = {TARGET, OTHER_TARGET};
+        long[][] allocated = new long[REQUESTS.length][positions.length];
+        mView.setSelectionTrackingEnabled(true);
+        mView.center(OTHER_TARGET);
+        settle();
+
+        // the first round caches the item sizes and creates what is reused later
+        for (int round = 0; round <= ROUNDS; round++) {
+            for (int request = 0; request < REQUESTS.length; request++) {
+                for (int i = 0; i < positions.length; i++) {
+                    mView.startMetering(allocations, overhead);
+                    long before = getAllocatedBytes(allocations);
+                    request(request, positions[i]);
+                    long bytes = getAllocatedBytes(allocations) - before - overhead
+                            - mView.stopMetering();
+                    settle();
+
+                    if (round == 1 || round > 1 && bytes < allocated[request][i]) {
+                        allocated[request][i] = bytes;
+                    }
+                }
+            }
+        }
+
+        for (int request = 0; request < REQUESTS.length; request++) {
+            for (int i = 0; i < positions.length; i++) {
+                assertEquals(REQUESTS[request] + "(" + positions[i] + ") allocated bytes",
+                        0, allocated[request][i]);
+            }
+        }
+    }
+
+    @Test
+    public void visibleRangeReadsDoNotAllocate() {
+        ThreadMXBean allocations = getAllocationBean();
+        long overhead = getOverhead(allocations);
+        int[] positions = new int[SPAN_COUNT * 16];
+        float[] fractions = new float[positions.length];
+        // one for each of the two scroll offsets the reads alternate between
+        long[] allocated = {Long.MAX_VALUE, Long.MAX_VALUE};
+        mView.center(TARGET);
+        settle();
+
+        int sum = 0;
+        for (int i = 0; i < READS; i++) {
+            // moving by a pixel drops the snapshot, so every read recomputes the range
+            int delta = (i & 1) == 0 ? 1 : -1;
+            if (mOrientation == RecyclerView.HORIZONTAL) {
+                mView.scrollBy(delta, 0);
+            } else {
+                mView.scrollBy(0, delta);
+            }
+
+            mView.startMetering(allocations, overhead);
+            long before = getAllocatedBytes(allocations);
+            sum += mView.getFirstVisiblePosition() + mView.getLastVisiblePosition()
+                    + mView.getFirstCompletelyVisiblePosition()
+                    + mView.getLastCompletelyVisiblePosition()
+                    + (mView.isVisible(TARGET) ? 1 : 0) + (mView.isCompletelyVisible(TARGET) ? 1 : 0)
+                    + mView.getVisibleFractions(positions, fractions);
+            long bytes = getAllocatedBytes(allocations) - before - overhead - mView.stopMetering();
+            if (i >= READS / 2) {
+                allocated[i & 1] = Math.min(allocated[i & 1], bytes);
+            }
+        }
+
+        assertTrue(sum != 0);
+        assertEquals("allocated bytes", 0, allocated[0]);
+        assertEquals("allocated bytes", 0, allocated[1]);
+    }
+
+    //
+    //
+    //
+
+    private RecyclerView.LayoutManager createLayoutManager(Context context) {
+        switch (mLayout) {
+            case GRID:
+                return new GridLayoutManager(context, SPAN_COUNT, mOrientation, false);
+            case STAGGERED:
+                StaggeredGridLayoutManager lm = new StaggeredGridLayoutManager(SPAN_COUNT, mOrientation);
+                // no gap fixing pass after a jump, so every pass is the request's own
+                lm.setGapStrategy(StaggeredGridLayoutManager.GAP_HANDLING_NONE);
+                return lm;
+            default:
+                return new LinearLayoutManager(context, mOrientation, false);
+        }
+    }
+
+    private void request(int request, int position) {
+        switch (request) {
+            case 0:
+                mView.head(position);
+                break;
+            case 1:
+                mView.tail(position);
+                break;
+            case 2:
+                mView.center(position);
+                break;
+            case 3:
+                mView.snap(position, CenteringRecyclerView.SNAPPING_STRATEGY_CENTER);
+                break;
+            default:
+                mView.setSelection(position, CenteringRecyclerView.ALIGN_CENTER);
+                break;
+        }
+    }
+
+    private int getItemsPerLine() {
+        return LINEAR.equals(mLayout) ? 1 : SPAN_COUNT;
+    }
+
+    private int getLine(int position) {
+        return position / getItemsPerLine();
+    }
+
+    /**
+     * Returns the size of a line along the layout orientation. The items of a line share a size,
+     * so grid rows and staggered spans stay level.
+     */
+    private int getLineSize(int line) {
+        if (!mVariableSizes) {
+            return ITEM_SIZE;
+        }
+
+        return MIN_ITEM_SIZE + (line * 37) % ITEM_SIZE_RANGE;
+    }
+
+    private int getViewportSize() {
+        return mOrientation == RecyclerView.HORIZONTAL ? WIDTH : HEIGHT;
+    }
+
+    private int getOffset(int alignment, int size) {
+        switch (alignment) {
+            case CenteringRecyclerView.ALIGN_TAIL:
+                return AlignmentMath.getBottomOffset(0, getViewportSize(), size);
+            case CenteringRecyclerView.ALIGN_CENTER:
+                return AlignmentMath.getCenterOffset(0, getViewportSize(), size);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Finds the first and last line a layout attaches when it puts the given line at the given
+     * offset: every line that overlaps the viewport.
+     */
+    private void getAttachedLines(int line, int offset, int[] lines) {
+        int first = line;
+        for (int start = offset; start > 0 && first > 0; ) {
+            first--;
+            start -= getLineSize(first);
+        }
+
+        int last = line;
+        int lastLine = getLine(ITEM_COUNT - 1);
+        for (int end = offset + getLineSize(line); end < getViewportSize() && last < lastLine; ) {
+            last++;
+            end += getLineSize(last);
+        }
+
+        lines[0] = first;
+        lines[1] = last;
+    }
+
+    private void startRequest() {
+        mView.resetCounters();
+        mAdapter.mBindCount = 0;
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            mAttached[i] = false;
+        }
+        mAttachedCount = 0;
+    }
+
+    /**
+     * Lays the list out and runs what was posted, for a few frames. Layout goes first, as the
+     * traversal holds back posted messages on a device.
+     */
+    private void settle() {
+        for (int frame = 0; frame < FRAMES; frame++) {
+            if (mView.isLayoutRequested()) {
+                mView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+                mView.layout(0, 0, WIDTH, HEIGHT);
+            }
+            ShadowLooper.runUiThreadTasks();
+        }
+    }
+
+    /**
+     * Checks that a settled request aligned the target and cost exactly what it should. A target
+     * of a known size is aligned by a single pass. A tail or center target of an unknown size is
+     * first laid out with the size of the first child, and corrected by a second pass unless the
+     * guess was right; the lines of both passes are bound. measureAhead binds the target (its
+     * whole row in a grid) up front instead.
+     */
+    private void assertRequest(int position, int alignment, boolean measureAhead) {
+        View child = mView.getLayoutManager().findViewByPosition(position);
+        assertNotNull("position " + position + " is not laid out", child);
+        assertEquals("pixel error", 0, mView.getAlignmentDelta(mOrientation, child, alignment));
+
+        int line = getLine(position);
+        int size = getLineSize(line);
+        boolean sizeKnown = alignment == CenteringRecyclerView.ALIGN_HEAD || mWarm;
+        int measureBinds = measureAhead && !sizeKnown ? (GRID.equals(mLayout) ? SPAN_COUNT : 1) : 0;
+        // the list is at the top when a request starts, the first child is position 0
+        int guessedSize = sizeKnown || measureAhead ? size : getLineSize(0);
+
+        int[] lines = new int[2];
+        getAttachedLines(line, getOffset(alignment, size), lines);
+        int children = (lines[1] - lines[0] + 1) * getItemsPerLine();
+        int passes = 1;
+        if (guessedSize != size) {
+            passes = 2;
+            int[] guessedLines = new int[2];
+            getAttachedLines(line, getOffset(alignment, guessedSize), guessedLines);
+            lines[0] = Math.min(lines[0], guessedLines[0]);
+            lines[1] = Math.max(lines[1], guessedLines[1]);
+        }
+        int attached = (lines[1] - lines[0] + 1) * getItemsPerLine();
+
+        assertEquals("layout passes", passes, mView.getLayoutPassCount());
+        assertEquals("children", children, mView.getChildCount());
+        assertEquals("attached positions", attached, mAttachedCount);
+        assertEquals("measureAhead binds", measureBinds, mView.getMeasureBindCount());
+        assertEquals("binds", attached + measureBinds, mAdapter.mBindCount);
+    }
+
+    private static ThreadMXBean getAllocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof ThreadMXBean);
+        ThreadMXBean allocations = (ThreadMXBean) bean;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        return allocations;
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean allocations) {
+        return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns what reading the allocated bytes allocates by itself.
+     */
+    private static long getOverhead(ThreadMXBean allocations) {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long before = getAllocatedBytes(allocations);
+            overhead = Math.min(overhead, getAllocatedBytes(allocations) - before);
+        }
+
+        return overhead;
+    }
+
+    /**
+     * Leaves the View methods Robolectric shadows out of the allocations, as the shadows call the
+     * real methods reflectively, which allocates on every call.
+     */
+    private static class TestRecyclerView extends CenteringRecyclerView {
+        private ThreadMXBean mAllocations;
+        private long mOverhead;
+        private long mSandboxBytes;
+
+        TestRecyclerView(Context context) {
+            super(context);
+        }
+
+        void startMetering(ThreadMXBean allocations, long overhead) {
+            mAllocations = allocations;
+            mOverhead = overhead;
+            mSandboxBytes = 0;
+        }
+
+        /**
+         * @return the bytes allocated by the shadows since startMetering.
+         */
+        long stopMetering() {
+            mAllocations = null;
+
+            return mSandboxBytes;
+        }
+
+        private long enterSandbox() {
+            return mAllocations == null ? 0 : getAllocatedBytes(mAllocations);
+        }
+
+        private void exitSandbox(long before) {
+            if (mAllocations != null) {
+                mSandboxBytes += getAllocatedBytes(mAllocations) - before - mOverhead;
+            }
+        }
+
+        @Override
+        public void requestLayout() {
+            long before = enterSandbox();
+            super.requestLayout();
+            exitSandbox(before);
+        }
+
+        @Override
+        public boolean post(Runnable action) {
+            long before = enterSandbox();
+            boolean posted = super.post(action);
+            exitSandbox(before);
+
+            return posted;
+        }
+
+        @Override
+        public boolean postDelayed(Runnable action, long delayMillis) {
+            long before = enterSandbox();
+            boolean posted = super.postDelayed(action, delayMillis);
+            exitSandbox(before);
+
+            return posted;
+        }
+
+        @Override
+        public void postOnAnimation(Runnable action) {
+            long before = enterSandbox();
+            super.postOnAnimation(action);
+            exitSandbox(before);
+        }
+
+        @Override
+        public boolean removeCallbacks(Runnable action) {
+            long before = enterSandbox();
+            boolean removed = super.removeCallbacks(action);
+            exitSandbox(before);
+
+            return removed;
+        }
+    }
+
+    /**
+     * Takes the layout requests of the list, so that only settle() lays it out.
+     */
+    private static class LayoutHost extends FrameLayout {
+        LayoutHost(Context context) {
+            super(context);
+        }
+
+        @Override
+        public boolean isLayoutRequested() {
+            return true;
+        }
+    }
+
+    private class TestAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        int mBindCount;
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+            mBindCount++;
+
+            int size = getLineSize(getLine(position));
+            View view = holder.itemView;
+            ViewGroup.LayoutParams lp = view.getLayoutParams();
+            if (lp == null) {
+                lp = new RecyclerView.LayoutParams(0, 0);
+            }
+            if (mOrientation == RecyclerView.HORIZONTAL) {
+                lp.width = size;
+                lp.height = ViewGroup.LayoutParams.MATCH_PARENT;
+            } else {
+                lp.width = ViewGroup.LayoutParams.MATCH_PARENT;
+                lp.height = size;
+            }
+            view.setLayoutParams(lp);
+        }
+
+        @Override
+        public int getItemCount() {
+            return ITEM_COUNT;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Shigehiro Soejima
+ */
+public class ItemSizeCacheTest {
+    private ItemSizeCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new ItemSizeCache();
+        for (int position = 0; position < 5; position++) {
+            mCache.put(position, 100 + position);
+        }
+    }
+
+    @Test
+    public void getAndPut() {
+        assertEquals(102, mCache.get(2));
+        assertEquals(ItemSizeCache.UNKNOWN, mCache.get(5));
+        assertEquals(ItemSizeCache.UNKNOWN, mCache.get(-1));
+
+        // grows past the initial capacity
+        mCache.put(1000, 7);
+        assertEquals(7, mCache.get(1000));
+        assertEquals(ItemSizeCache.UNKNOWN, mCache.get(999));
+        assertEquals(104, mCache.get(4));
+    }
+
+    @Test
+    public void clear() {
+        mCache.clear();
+        for (int position = 0; position < 5; position++) {
+            assertEquals(ItemSizeCache.UNKNOWN, mCache.get(position));
+        }
+
+        mCache.put(3, 42);
+        assertEquals(ItemSizeCache.UNKNOWN, mCache.get(2));
+        assertEquals(42, mCache.get(3));
+    }
+
+    @Test
+    public void invalidate() {
+        mCache.invalidate(1, 2);
+        assertSizes(100, ItemSizeCache.UNKNOWN, ItemSizeCache.UNKNOWN, 103, 104);
+
+        // past the known range
+        mCache.invalidate(4, 10);
+        assertSizes(100, ItemSizeCache.UNKNOWN, ItemSizeCache.UNKNOWN, 103, ItemSizeCache.UNKNOWN);
+    }
+
+    @Test
+    public void insert() {
+        mCache.insert(1, 2);
+        assertSizes(100, ItemSizeCache.UNKNOWN, ItemSizeCache.UNKNOWN, 101, 102, 103, 104);
+
+        // after the known range
+        mCache.insert(10, 2);
+        assertSizes(100, ItemSizeCache.UNKNOWN, ItemSizeCache.UNKNOWN, 101, 102, 103, 104);
+    }
+
+    @Test
+    public void remove() {
+        mCache.remove(1, 2);
+        assertSizes(100, 103, 104, ItemSizeCache.UNKNOWN, ItemSizeCache.UNKNOWN);
+
+        // overlapping the end of the known range
+        mCache.remove(2, 10);
+        assertSizes(100, 103, ItemSizeCache.UNKNOWN);
+    }
+
+    @Test
+    public void move() {
+        mCache.move(0, 3);
+        assertSizes(101, 102, 103, 100, 104);
+
+        mCache.move(4, 0);
+        assertSizes(104, 101, 102, 103, 100);
+    }
+
+    @Test
+    public void moveUnknownSize() {
+        mCache.invalidate(1, 1);
+        mCache.move(1, 3);
+        assertSizes(100, 102, 103, ItemSizeCache.UNKNOWN, 104);
+    }
+
+    @Test
+    public void positionsNearIntegerMaxValue() {
+        // the middle and the end of a fake endless list
+        mCache.put(1073741823, 7);
+        mCache.put(1073741824, 8);
+        mCache.put(Integer.MAX_VALUE - 1, 9);
+        assertEquals(7, mCache.get(1073741823));
+        assertEquals(8, mCache.get(1073741824));
+        assertEquals(9, mCache.get(Integer.MAX_VALUE - 1));
+        assertEquals(102, mCache.get(2));
+
+        // shifted past Integer.MAX_VALUE and dropped
+        mCache.insert(0, 1);
+        assertEquals(7, mCache.get(1073741824));
+        assertEquals(8, mCache.get(1073741825));
+        assertEquals(ItemSizeCache.UNKNOWN, mCache.get(Integer.MAX_VALUE - 1));
+        assertEquals(ItemSizeCache.UNKNOWN, mCache.get(Integer.MAX_VALUE));
+
+        mCache.remove(0, 1);
+        mCache.invalidate(1073741823, Integer.MAX_VALUE);
+        assertEquals(ItemSizeCache.UNKNOWN, mCache.get(1073741823));
+        assertEquals(ItemSizeCache.UNKNOWN, mCache.get(1073741824));
+        assertSizes(100, 101, 102, 103, 104);
+    }
+
+    @Test
+    public void matchesAListOfSizes() {
+        Random random = new Random(42);
+        List<Integer> sizes = new ArrayList<>();
+        mCache.clear();
+        for (int i = 0; i < 50; i++) {
+            sizes.add(ItemSizeCache.UNKNOWN);
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            int count = sizes.size();
+            int position = random.nextInt(count);
+            switch (random.nextInt(5)) {
+                case 0:
+                    int size = random.nextInt(500);
+                    mCache.put(position, size);
+                    sizes.set(position, size);
+                    break;
+                case 1:
+                    int inserted = 1 + random.nextInt(3);
+                    mCache.insert(position, inserted);
+                    for (int j = 0; j < inserted; j++) {
+                        sizes.add(position, ItemSizeCache.UNKNOWN);
+                    }
+                    break;
+                case 2:
+                    int removed = Math.min(1 + random.nextInt(3), count - position);
+                    if (count - removed > 10) {
+                        mCache.remove(position, removed);
+                        sizes.subList(position, position + removed).clear();
+                    }
+                    break;
+                case 3:
+                    int toPosition = random.nextInt(count);
+                    mCache.move(position, toPosition);
+                    sizes.add(toPosition, sizes.remove(position));
+                    break;
+                default:
+                    int invalidated = Math.min(1 + random.nextInt(3), count - position);
+                    mCache.invalidate(position, invalidated);
+                    for (int j = position; j < position + invalidated; j++) {
+                        sizes.set(j, ItemSizeCache.UNKNOWN);
+                    }
+                    break;
+            }
+            for (int j = 0; j < sizes.size(); j++) {
+                assertEquals("position " + j, (int) sizes.get(j), mCache.get(j));
+            }
+            assertEquals(ItemSizeCache.UNKNOWN, mCache.get(sizes.size()));
+        }
+    }
+
+    private void assertSizes(int... sizes) {
+        for (int position = 0; position < sizes.length; position++) {
+            assertEquals("position " + position, sizes[position], mCache.get(position));
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015 Shigehiro Soejima
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mightyfrog.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Shigehiro Soejima
+ */
+public class StableIdIndexTest {
+    // the table of an index of up to 8 items
+    private static final int MIN_TABLE_MASK = 15;
+
+    private StableIdIndex mIndex;
+    private List<Long> mIds;
+
+    @Before
+    public void setUp() {
+        mIndex = new StableIdIndex();
+        mIds = new ArrayList<>();
+    }
+
+    @Test
+    public void reset() {
+        reset(5);
+        for (int position = 0; position < 5; position++) {
+            setId(position, 100 + position);
+        }
+        assertIndex();
+
+        reset(3);
+        assertEquals(StableIdIndex.NO_POSITION, mIndex.getPosition(100));
+        assertEquals(StableIdIndex.NO_ID, mIndex.getId(0));
+        assertIndex();
+    }
+
+    @Test
+    public void setId() {
+        reset(3);
+        setId(1, 42);
+        assertEquals(1, mIndex.getPosition(42));
+        assertEquals(42, mIndex.getId(1));
+
+        // replaced and cleared
+        setId(1, 43);
+        assertEquals(StableIdIndex.NO_POSITION, mIndex.getPosition(42));
+        setId(1, StableIdIndex.NO_ID);
+        assertEquals(StableIdIndex.NO_POSITION, mIndex.getPosition(43));
+        assertIndex();
+
+        // out of range
+        mIndex.setId(3, 44);
+        assertEquals(StableIdIndex.NO_POSITION, mIndex.getPosition(44));
+        assertEquals(StableIdIndex.NO_ID, mIndex.getId(-1));
+        assertEquals(StableIdIndex.NO_POSITION, mIndex.getPosition(StableIdIndex.NO_ID));
+    }
+
+    @Test
+    public void growsPastTheInitialTable() {
+        reset(0);
+        insert(0, 100);
+        for (int position = 0; position < 100; position++) {
+            setId(position, position * 31L);
+        }
+        assertIndex();
+    }
+
+    @Test
+    public void insert() {
+        reset(5);
+        for (int position = 0; position < 5; position++) {
+            setId(position, 100 + position);
+        }
+
+        insert(2, 3);
+        assertEquals(5, mIndex.getPosition(102));
+        assertEquals(StableIdIndex.NO_ID, mIndex.getId(2));
+        assertIndex();
+
+        // at the end
+        insert(8, 1);
+        assertIndex();
+    }
+
+    @Test
+    public void remove() {
+        reset(6);
+        for (int position = 0; position < 6; position++) {
+            setId(position, 100 + position);
+        }
+
+        remove(1, 2);
+        assertEquals(StableIdIndex.NO_POSITION, mIndex.getPosition(101));
+        assertEquals(StableIdIndex.NO_POSITION, mIndex.getPosition(102));
+        assertEquals(1, mIndex.getPosition(103));
+        assertIndex();
+
+        // overlapping the end
+        remove(2, 10);
+        assertEquals(2, mIndex.getItemCount());
+        assertIndex();
+    }
+
+    @Test
+    public void move() {
+        reset(5);
+        for (int position = 0; position < 5; position++) {
+            setId(position, 100 + position);
+        }
+
+        move(0, 3);
+        assertEquals(3, mIndex.getPosition(100));
+        assertEquals(0, mIndex.getPosition(101));
+        assertIndex();
+
+        move(4, 1);
+        assertEquals(1, mIndex.getPosition(104));
+        assertIndex();
+    }
+
+    @Test
+    public void removeKeepsProbeChains() {
+        // IDs sharing a home slot, and one homed right after it, build a single probe chain
+        long[] colliding = findIdsInSlot(0, 5);
+        long neighbor = findIdsInSlot(1, 1)[0];
+
+        reset(6);
+        for (int position = 0; position < 5; position++) {
+            setId(position, colliding[position]);
+        }
+        setId(5, neighbor);
+        assertIndex();
+
+        // each removal leaves a hole the later entries have to be shifted back into
+        setId(1, StableIdIndex.NO_ID);
+        assertIndex();
+        remove(0, 1);
+        assertIndex();
+        remove(1, 1);
+        assertIndex();
+        setId(0, StableIdIndex.NO_ID);
+        assertIndex();
+    }
+
+    @Test
+    public void shiftKeepsCollidingNeighbors() {
+        long[] colliding = findIdsInSlot(0, 4);
+
+        // a short shift re-keys colliding entries one by one
+        reset(4);
+        for (int position = 0; position < 4; position++) {
+            setId(position, colliding[position]);
+        }
+        insert(0, 1);
+        assertIndex();
+
+        // towards the start, with the chain built in reverse order
+        reset(4);
+        for (int position = 3; position >= 0; position--) {
+            setId(position, colliding[position]);
+        }
+        remove(0, 1);
+        assertIndex();
+    }
+
+    @Test
+    public void matchesAListOfIds() {
+        Random random = new Random(42);
+        long nextId = 1;
+
+        reset(20);
+        for (int i = 0; i < 2000; i++) {
+            int count = mIds.size();
+            switch (random.nextInt(5)) {
+                case 0:
+                    if (count > 0) {
+                        setId(random.nextInt(count), random.nextInt(4) == 0
+                                ? StableIdIndex.NO_ID : nextId++);
+                    }
+                    break;
+                case 1:
+                    insert(random.nextInt(count + 1), 1 + random.nextInt(3));
+                    break;
+                case 2:
+                    if (count > 0) {
+                        remove(random.nextInt(count), 1 + random.nextInt(3));
+                    }
+                    break;
+                case 3:
+                    if (count > 0) {
+                        move(random.nextInt(count), random.nextInt(count));
+                    }
+                    break;
+                default:
+                    for (int position = 0; position < count; position++) {
+                        if (mIds.get(position) == StableIdIndex.NO_ID) {
+                            setId(position, nextId++);
+                        }
+                    }
+                    break;
+            }
+            assertIndex();
+        }
+    }
+
+    @Test
+    public void shiftsShortAndLongRanges() {
+        Random random = new Random(7);
+        reset(2000);
+        for (int position = 0; position < 2000; position++) {
+            setId(position, position * 7919L + 1);
+        }
+
+        for (int i = 0; i < 300; i++) {
+            int from = random.nextInt(mIds.size());
+            // mostly short moves, which re-key entry by entry, and some across the list
+            int to = i % 10 == 0 ? random.nextInt(mIds.size())
+                    : Math.max(0, Math.min(mIds.size() - 1, from + random.nextInt(21) - 10));
+            move(from, to);
+            if (i % 50 == 0) {
+                insert(random.nextInt(mIds.size()), 3);
+                remove(random.nextInt(mIds.size() - 3), 3);
+            }
+        }
+        assertIndex();
+    }
+
+    //
+    //
+    //
+
+    private void reset(int itemCount) {
+        mIndex.reset(itemCount);
+        mIds.clear();
+        for (int i = 0; i < itemCount; i++) {
+            mIds.add(StableIdIndex.NO_ID);
+        }
+    }
+
+    private void setId(int position, long id) {
+        mIndex.setId(position, id);
+        mIds.set(position, id);
+    }
+
+    private void insert(int positionStart, int itemCount) {
+        mIndex.insert(positionStart, itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            mIds.add(positionStart, StableIdIndex.NO_ID);
+        }
+    }
+
+    private void remove(int positionStart, int itemCount) {
+        mIndex.remove(positionStart, itemCount);
+        int end = Math.min(positionStart + itemCount, mIds.size());
+        mIds.subList(positionStart, end).clear();
+    }
+
+    private void move(int fromPosition, int toPosition) {
+        mIndex.move(fromPosition, toPosition);
+        mIds.add(toPosition, mIds.remove(fromPosition));
+    }
+
+    /**
+     * Checks the index against the plain list of IDs, both ways.
+     */
+    private void assertIndex() {
+        assertEquals(mIds.size(), mIndex.getItemCount());
+        for (int position = 0; position < mIds.size(); position++) {
+            long id = mIds.get(position);
+            assertEquals("id at " + position, id, mIndex.getId(position));
+            if (id != StableIdIndex.NO_ID) {
+                assertEquals("position of " + id, position, mIndex.getPosition(id));
+            }
+        }
+    }
+
+    /**
+     * Returns IDs whose home slot in the smallest table is the given one, mirroring the hash of
+     * StableIdIndex.
+     */
+    private static long[] findIdsInSlot(int slot, int count) {
+        long[] ids = new long[count];
+        int found = 0;
+        for (long id = 0; found < count; id++) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            if (((int) (hash ^ (hash >>> 32)) & MIN_TABLE_MASK) == slot) {
+                ids[found++] = id;
+            }
+        }
+
+        return ids;
+    }
+}